@@ -0,0 +1,118 @@
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that the bot reaches a steady state without allocation. A child JVM
+ * runs with the Epsilon collector (it never frees anything) and a small heap,
+ * and feeds a long generated game through Player.turn, the same loop the real
+ * bot runs. After the warm-up turns, bytes allocated per turn are taken from
+ * the thread allocation counter and the heap in use is compared before and after.
+ * The check fails (exit code 1) if the turns allocate more than
+ * MAX_BYTES_PER_TURN on average or the heap grows by that much, a leak also runs
+ * the heap out.
+ *
+ * Not quite zero: when C2 recompiles or deoptimizes a method the VM now and then
+ * allocates a few hundred bytes on our thread, once, not per turn. With
+ * -Xint or -XX:TieredStopAtLevel=1 on the child the count is exactly 0. The
+ * turns that allocated are listed so they can be told apart from a real leak.
+ *
+ * Usage: java AllocationCheck [turns] [config]
+ * e.g. java AllocationCheck 20000 "mode=plan turnMs=1"
+ * log=error and stats=off are always added to the config.
+ */
+public class AllocationCheck {
+    static final String CHILD = "--child";
+    static final int WARMUP_TURNS = 5000;
+    static final String HEAP = "64m";
+    // Anything that allocates every turn is at least an object header per turn
+    static final double MAX_BYTES_PER_TURN = 1.0;
+    static final int LISTED_TURNS = 10;
+
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0 && args[0].equals(CHILD)) {
+                boolean clean = child(Integer.parseInt(args[1]), Arrays.copyOfRange(args, 2, args.length));
+                System.exit(clean ? 0 : 1);
+            }
+            int turns = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+            String config = args.length > 1 ? args[1] : "mode=greedy";
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            List<String> command = new ArrayList<>(List.of(java, "-XX:+UnlockExperimentalVMOptions",
+                    "-XX:+UseEpsilonGC", "-Xms" + HEAP, "-Xmx" + HEAP, "-cp", System.getProperty("java.class.path"),
+                    "AllocationCheck", CHILD, Integer.toString(turns)));
+            command.addAll(Arrays.asList(config.trim().split("\\s+")));
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            System.exit(process.waitFor());
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Child side, under Epsilon.
+     *
+     * @return true if the turns after the warm-up didn't allocate
+     */
+    static boolean child(int turns, String[] config) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        Runtime runtime = Runtime.getRuntime();
+        int total = WARMUP_TURNS + turns;
+        byte[] input = new StateGenerator(1).game(total);
+
+        String[] options = Arrays.copyOf(config, config.length + 2);
+        options[config.length] = "log=error";
+        options[config.length + 1] = "stats=off";
+        Game game = new Game(BotConfig.parse(options));
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+        game.out = nowhere;
+        game.err = nowhere;
+        ProtocolReader in = new ProtocolReader(new ByteArrayInputStream(input));
+        Player.readObjectives(in, game);
+
+        long[] allocated = new long[total];
+        long heapBefore = 0;
+        for (int turn = 0; turn < total; turn++) {
+            if (turn == WARMUP_TURNS) {
+                heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            }
+            long before = threads.getCurrentThreadAllocatedBytes();
+            Player.turn(in, game);
+            allocated[turn] = threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        game.stopPondering();
+
+        long warmupBytes = 0;
+        for (int turn = 1; turn < WARMUP_TURNS; turn++) {
+            warmupBytes += allocated[turn];
+        }
+        long bytes = 0;
+        long max = 0;
+        int allocating = 0;
+        for (int turn = WARMUP_TURNS; turn < total; turn++) {
+            bytes += allocated[turn];
+            max = Math.max(max, allocated[turn]);
+            if (allocated[turn] > 0 && allocating++ < LISTED_TURNS) {
+                System.out.println("turn " + turn + " allocated " + allocated[turn] + "B");
+            }
+        }
+        System.out.println(String.join(" ", options));
+        System.out.printf("first turn %dB, warm-up %.1fB/turn%n", allocated[0],
+                warmupBytes / (double) (WARMUP_TURNS - 1));
+        System.out.printf("%d turns after warm-up: %.2fB/turn, max %dB, %d turns allocated%n", turns,
+                bytes / (double) turns, max, allocating);
+        System.out.printf("heap in use %dKB -> %dKB (%.2fB/turn)%n", heapBefore / 1024, heapAfter / 1024,
+                (heapAfter - heapBefore) / (double) turns);
+        boolean clean = bytes <= MAX_BYTES_PER_TURN * turns && heapAfter - heapBefore <= MAX_BYTES_PER_TURN * turns;
+        System.out.println(clean ? "OK, no steady allocation" : "FAILED, the steady state allocates");
+        return clean;
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Self-play arena: plays two bot configurations against each other on the local
+ * Referee, one game per worker on a fixed pool sized to the machine, and reports
+ * win rate, average score margin and games per second.
+ *
+ * Usage: java Arena [games] [configA] [configB] [threads]
+ * Configs are BotConfig options separated by spaces, e.g.
+ * java Arena 2000 "mode=greedy" "mode=mcts turnMs=5"
+ *
+ * Bots swap seats every game, so who starts doesn't skew the result. Exceptions
+ * that Game.play covered with a fallback command are counted per bot, they'd
+ * otherwise only show as weak moves.
+ */
+public class Arena {
+    private final String[] configA;
+    private final String[] configB;
+
+    final AtomicLong games = new AtomicLong();
+    final AtomicLong winsA = new AtomicLong();
+    final AtomicLong draws = new AtomicLong();
+    final AtomicLong marginA = new AtomicLong();
+    final AtomicLong illegalA = new AtomicLong();
+    final AtomicLong illegalB = new AtomicLong();
+    // Exceptions Game.play covered with a fallback command
+    final AtomicLong failedA = new AtomicLong();
+    final AtomicLong failedB = new AtomicLong();
+
+    Arena(String configA, String configB) {
+        this.configA = configA.trim().split("\\s+");
+        this.configB = configB.trim().split("\\s+");
+    }
+
+    public static void main(String[] args) {
+        try {
+            int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+            String configA = args.length > 1 ? args[1] : "mode=greedy";
+            String configB = args.length > 2 ? args[2] : "mode=mcts turnMs=5";
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+            Arena arena = new Arena(configA, configB);
+            System.out.println("A: " + configA + "  vs  B: " + configB + "  (" + games + " games, " + threads
+                    + " threads)");
+            long start = System.nanoTime();
+            arena.run(games, threads, 1);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            arena.report(System.out, seconds);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Plays games on a pool of threads, game i uses seed firstSeed + i.
+     */
+    void run(int count, int threads, long firstSeed) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long seed = firstSeed + i;
+                results.add(pool.submit(() -> playGame(seed)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays one game. A takes seat 0 for even seeds and seat 1 for odd ones.
+     */
+    void playGame(long seed) {
+        int seatOfA = (int) (seed & 1);
+        Referee referee = new Referee(seed);
+        Bot[] bots = new Bot[2];
+        bots[seatOfA] = new Bot(BotConfig.parse(configA), seed);
+        bots[1 - seatOfA] = new Bot(BotConfig.parse(configB), seed + 1);
+        referee.newGame((int) ((seed >>> 1) & 1));
+
+        while (!referee.isOver()) {
+            int player = referee.activePlayer();
+            String command = bots[player].play(referee, player);
+            if (!referee.play(command)) {
+                (player == seatOfA ? illegalA : illegalB).incrementAndGet();
+            }
+        }
+
+        failedA.addAndGet(bots[seatOfA].game.failures);
+        failedB.addAndGet(bots[1 - seatOfA].game.failures);
+        bots[0].game.close();
+        bots[1].game.close();
+        int margin = referee.state.score(seatOfA) - referee.state.score(1 - seatOfA);
+        games.incrementAndGet();
+        marginA.addAndGet(margin);
+        if (margin > 0) {
+            winsA.incrementAndGet();
+        } else if (margin == 0) {
+            draws.incrementAndGet();
+        }
+    }
+
+    void report(PrintStream out, double seconds) {
+        long played = games.get();
+        double winRate = (winsA.get() + draws.get() / 2.0) / played;
+        out.printf("games: %d  A wins: %d  draws: %d  B wins: %d%n", played, winsA.get(), draws.get(),
+                played - winsA.get() - draws.get());
+        out.printf("A win rate: %.1f%%  average margin A-B: %+.2f%n", 100 * winRate, marginA.get() / (double) played);
+        out.printf("illegal commands  A: %d  B: %d%n", illegalA.get(), illegalB.get());
+        out.printf("exceptions        A: %d  B: %d%n", failedA.get(), failedB.get());
+        out.printf("%.1f games/s (%.1fs)%n", played / seconds, seconds);
+    }
+
+    /**
+     * A Game fed straight from the referee's state, with its output captured.
+     */
+    static class Bot {
+        final Game game;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        Bot(BotConfig config, long seed) {
+            config.seed = seed;
+            config.logLevel = DebugLog.OFF;
+            game = new Game(config);
+            game.out = new PrintStream(output);
+            game.err = new PrintStream(OutputStream.nullOutputStream());
+        }
+
+        /**
+         * Lets the bot play a turn and returns its first command line. Anything
+         * else it printed is dropped.
+         */
+        String play(Referee referee, int player) {
+            referee.viewFor(player, game.state);
+            output.reset();
+            game.play();
+            String printed = output.toString();
+            int end = printed.indexOf('\n');
+            return end < 0 ? printed : printed.substring(0, end);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Micro benchmarks for the hot paths of the bot: input parsing, ratePair over all
+ * station/planet pairs, investInPlanet, checkTechupgrades and a full Game.play.
+ * The packed Lanes versions of investable and objectiveReached run next to the
+ * PriceTables lookup and the plain loop over the tech levels.
+ * Every benchmark reports time and allocated bytes per operation, measured with
+ * the thread allocation counter, so an optimization can be checked against the
+ * numbers before it.
+ *
+ * The fixtures are read from a Replay file, by default one imported from
+ * ./data/four-rounds.txt and ./sascha/StreamData.java, up to MAX_FIXTURES
+ * turns. Their games run with stats=off log=off, as in AllocationCheck, so play
+ * measures the bot and not the diagnostics. "replay" streams every turn of the
+ * file from the mapping, "parse" reads the four-rounds turns as text through
+ * ProtocolReader.
+ *
+ * Each benchmark runs in a JVM of its own, like a JMH fork. In one JVM the op
+ * call in Benchmark.run would see every benchmark's lambda and go megamorphic,
+ * and the later benchmarks would run with the earlier ones' profile.
+ *
+ * Usage: java Benchmarks [filter] [measureMillis] [file.replay]
+ */
+public class Benchmarks {
+    static final String CHILD = "--child";
+    static final int WARMUP_MILLIS = 1000;
+    static final int MAX_FIXTURES = 1000;
+    static final BotConfig QUIET = BotConfig.parse("stats=off", "log=off");
+    static int measureMillis = 2000;
+    // Results go here so the JIT can't drop the work
+    static volatile long sink;
+
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0 && args[0].equals(CHILD)) {
+                measureMillis = Integer.parseInt(args[2]);
+                Benchmarks benchmarks = new Benchmarks();
+                benchmarks.loadFixtures(Paths.get(args[3]));
+                benchmarks.benchmarks().get(args[1]).run(args[1]);
+                return;
+            }
+            String filter = args.length > 0 ? args[0] : "";
+            if (args.length > 1) {
+                measureMillis = Integer.parseInt(args[1]);
+            }
+            Path replay;
+            if (args.length > 2) {
+                replay = Paths.get(args[2]);
+            } else {
+                replay = Files.createTempFile("fixtures", Replay.SUFFIX);
+                replay.toFile().deleteOnExit();
+                try (Replay.Writer writer = new Replay.Writer(replay)) {
+                    ReplayImporter.importInput(Files.readAllLines(Paths.get("./data/four-rounds.txt")), writer);
+                    ReplayImporter.importInput(
+                            ReplayImporter.streamData(Files.readAllLines(Paths.get("./sascha/StreamData.java"))),
+                            writer);
+                }
+            }
+            Benchmarks benchmarks = new Benchmarks();
+            benchmarks.loadFixtures(replay);
+            System.out.println(benchmarks.fixtures.size() + " fixture states, " + benchmarks.recordedTurns
+                    + " recorded turns");
+            System.out.printf("%-28s %12s %12s%n", "benchmark", "ns/op", "B/op");
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            for (String name : benchmarks.benchmarks().keySet()) {
+                if (name.contains(filter)) {
+                    new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Benchmarks", CHILD, name,
+                            Integer.toString(measureMillis), replay.toString()).inheritIO().start().waitFor();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // One Game per recorded turn, each holding that turn's state
+    final List<Game> fixtures = new ArrayList<>();
+    Replay.Reader recorded;
+    int recordedTurns;
+    // The four-rounds turns as protocol input, objectives first
+    byte[] input;
+    int inputTurns;
+
+    void loadFixtures(Path replay) throws Exception {
+        recorded = new Replay.Reader(replay);
+        GameState state = new GameState();
+        while (recorded.nextGame(state)) {
+            while (recorded.nextTurn(state)) {
+                recordedTurns++;
+                if (fixtures.size() < MAX_FIXTURES) {
+                    Game game = quietGame(QUIET);
+                    game.state.copyFrom(state);
+                    fixtures.add(game);
+                }
+            }
+        }
+
+        List<String> fourRounds = Files.readAllLines(Paths.get("./data/four-rounds.txt"));
+        StringBuilder data = new StringBuilder();
+        for (String line : fourRounds.subList(0, 8)) {
+            data.append(line).append('\n');
+        }
+        List<String> turns = ParserBenchmark.completeTurns(fourRounds);
+        for (int i = 0; i < 1000; i++) {
+            for (String turn : turns) {
+                data.append(turn);
+            }
+        }
+        input = data.toString().getBytes(StandardCharsets.US_ASCII);
+        inputTurns = turns.size() * 1000;
+    }
+
+    static Game quietGame(BotConfig config) {
+        Game game = new Game(config);
+        game.out = new PrintStream(OutputStream.nullOutputStream());
+        game.err = new PrintStream(OutputStream.nullOutputStream());
+        return game;
+    }
+
+    /**
+     * All benchmarks by name, in the order they run.
+     */
+    Map<String, Benchmark> benchmarks() {
+        Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        Game[] games = fixtures.toArray(new Game[0]);
+
+        // Out of the loop, a new Game allocates its search tables
+        Game parsed = new Game(QUIET);
+        benchmarks.put("parse (per turn)", new Benchmark(inputTurns, () -> {
+            ProtocolReader in = new ProtocolReader(new ByteArrayInputStream(input));
+            Player.readObjectives(in, parsed);
+            for (int i = 0; i < inputTurns; i++) {
+                Player.readTurn(in, parsed);
+            }
+            return parsed.state.sectorIndex;
+        }));
+
+        GameState streamed = new GameState();
+        benchmarks.put("replay (per turn)", new Benchmark(recordedTurns, () -> {
+            recorded.rewind();
+            int sum = 0;
+            while (recorded.nextGame(streamed)) {
+                while (recorded.nextTurn(streamed)) {
+                    sum += streamed.planetCount;
+                }
+            }
+            return sum;
+        }));
+
+        benchmarks.put("ratePair (all pairs)", new Benchmark(games.length, () -> {
+            int sum = 0;
+            for (Game game : games) {
+                GameState state = game.state;
+                for (int station = 0; station < GameState.STATIONS; station++) {
+                    if (state.stationOwner[station] != GameState.ME) {
+                        continue;
+                    }
+                    for (int planet = 0; planet < state.planetCount; planet++) {
+                        sum += game.ratePair(station, planet);
+                    }
+                }
+            }
+            return sum;
+        }));
+
+        benchmarks.put("investable (table)", new Benchmark(games.length, () -> {
+            int sum = 0;
+            for (Game game : games) {
+                int[] tasks = game.state.taskCode;
+                for (int techs : game.state.techCode) {
+                    for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+                        sum += PriceTables.investable(techs, tasks[planet]);
+                    }
+                }
+            }
+            return sum;
+        }));
+
+        benchmarks.put("investable (lanes)", new Benchmark(games.length, () -> {
+            int sum = 0;
+            for (Game game : games) {
+                int[] tasks = game.state.taskLanes;
+                for (int techs : game.state.techLanes) {
+                    for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+                        sum += Lanes.sum(Lanes.min(techs, tasks[planet]));
+                    }
+                }
+            }
+            return sum;
+        }));
+
+        benchmarks.put("objectiveReached (loop)", new Benchmark(games.length, () -> {
+            int sum = 0;
+            for (Game game : games) {
+                GameState state = game.state;
+                for (int station = 0; station < GameState.STATIONS; station++) {
+                    boolean reached = true;
+                    for (int i = 0; i < GameState.TECHS; i++) {
+                        if (state.tech(station, i) < state.objective(station, i)) {
+                            reached = false;
+                            break;
+                        }
+                    }
+                    sum += reached ? 1 : 0;
+                }
+            }
+            return sum;
+        }));
+
+        benchmarks.put("objectiveReached (lanes)", new Benchmark(games.length, () -> {
+            int sum = 0;
+            for (Game game : games) {
+                for (int station = 0; station < GameState.STATIONS; station++) {
+                    sum += game.state.objectiveReached(station) ? 1 : 0;
+                }
+            }
+            return sum;
+        }));
+
+        benchmarks.put("investInPlanet", new Benchmark(games.length, () -> {
+            int sum = 0;
+            for (Game game : games) {
+                sum += game.investInPlanet() ? 1 : 0;
+            }
+            return sum;
+        }));
+
+        benchmarks.put("checkTechupgrades", new Benchmark(games.length, () -> {
+            int sum = 0;
+            for (Game game : games) {
+                sum += game.checkTechupgrades() ? 1 : 0;
+            }
+            return sum;
+        }));
+
+        benchmarks.put("play (greedy)", new Benchmark(games.length, () -> {
+            for (Game game : games) {
+                game.play();
+            }
+            return games.length;
+        }));
+        return benchmarks;
+    }
+
+    /**
+     * A timed operation that does operationsPerCall operations per call.
+     */
+    static class Benchmark {
+        final int operationsPerCall;
+        final IntSupplier op;
+
+        Benchmark(int operationsPerCall, IntSupplier op) {
+            this.operationsPerCall = operationsPerCall;
+            this.op = op;
+        }
+
+        /**
+         * Runs op for the warmup time, then for the measurement time, and prints
+         * the cost of one operation.
+         */
+        void run(String name) {
+            long warmupEnd = System.nanoTime() + WARMUP_MILLIS * 1_000_000L;
+            while (System.nanoTime() < warmupEnd) {
+                sink += op.getAsInt();
+            }
+            long calls = 0;
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            long end = start + measureMillis * 1_000_000L;
+            long now;
+            do {
+                sink += op.getAsInt();
+                calls++;
+                now = System.nanoTime();
+            } while (now < end);
+            allocated = allocatedBytes() - allocated;
+            double operations = (double) calls * operationsPerCall;
+            System.out.printf("%-28s %12.1f %12.1f%n", name, (now - start) / operations, allocated / operations);
+        }
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -1,117 +1,540 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
-class StationObjective {
-    public int stationId;
-    public int objectiveScore;
-    public List<Integer> objective;
-    public boolean mine;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
-    public StationObjective(int stationId, int objectiveScore, List<Integer> objective, boolean mine) {
-        this.stationId = stationId;
-        this.objectiveScore = objectiveScore;
-        this.objective = objective;
-        this.mine = mine;
+/**
+ * Everything we know about the current turn, kept in preallocated primitive arrays
+ * that are overwritten in place every turn. Stations keep the slot of their
+ * objective line, planets are stored in input order. Side ME is always us, OPP the
+ * opponent.
+ */
+class GameState {
+    static final int STATIONS = 8;
+    static final int TECHS = 4;
+    static final int MAX_PLANETS = 5; // each sector has 5 planets
+    static final int ME = 0;
+    static final int OPP = 1;
+
+    int sectorIndex;
+
+    // Stations, indexed by slot. Tech and objective hold TECHS values per slot.
+    int[] stationId = new int[STATIONS];
+    int[] stationOwner = new int[STATIONS];
+    boolean[] available = new boolean[STATIONS];
+    int[] tech = new int[STATIONS * TECHS];
+    int[] objective = new int[STATIONS * TECHS];
+    int[] objectiveScore = new int[STATIONS];
+
+    // Planets, indexed by slot. Tasks hold TECHS values, bonuses two Bonus codes per
+    // slot, contributions MAX_PLANETS values per side.
+    int planetCount;
+    int[] planetId = new int[MAX_PLANETS];
+    int[] tasks = new int[MAX_PLANETS * TECHS];
+    int[] contribution = new int[2 * MAX_PLANETS];
+    int[] colonizationScore = new int[MAX_PLANETS];
+    int[] planetBonus = new int[MAX_PLANETS * 2];
+
+    // Points from planet colonization per side, does not include bonus points
+    int[] colonizationPoints = new int[2];
+    // Held bonuses, Bonus.COUNT counters per side
+    int[] inventory = new int[2 * Bonus.COUNT];
+
+    // Not part of the turn input, only tracked by the forward model. resetHidden sets
+    // them to what the input implies, round counts from 0 at the turn read.
+    int activeSide;
+    int round;
+    int colonizedInSector;
+    boolean[] colonized = new boolean[MAX_PLANETS];
+    // Bonus index each side asked for last time it colonized the planet
+    int[] preference = new int[2 * MAX_PLANETS];
+    // Pending ALIEN_ARTIFACT of the active side as two tech indices, NO_ARTIFACT if none
+    int artifact = NO_ARTIFACT;
+    // Zobrist key of the position, kept up to date by the forward model
+    long hash;
+
+    // Derived from the arrays above, see refresh(). PriceTables codes of each
+    // station's tech and each planet's tasks, the tasks left and the total tasks.
+    int[] techCode = new int[STATIONS];
+    int[] taskCode = new int[MAX_PLANETS];
+    // The same vectors as Lanes, and the objectives
+    int[] techLanes = new int[STATIONS];
+    int[] taskLanes = new int[MAX_PLANETS];
+    int[] objectiveLanes = new int[STATIONS];
+    int[] remaining = new int[MAX_PLANETS];
+    int[] total = new int[MAX_PLANETS];
+
+    static final int NO_ARTIFACT = -1;
+    static final int PLANETS_TO_COLONIZE = 4; // colonizing 4 planets ends a sector
+    static final int SECTORS = 3;
+    static final int MAX_ROUNDS = 200;
+
+    int tech(int station, int tech) {
+        return this.tech[station * TECHS + tech];
     }
-}
 
-class Station {
-    public int id;
-    public boolean available;
-    public boolean mine;
-    public List<Integer> tech;
+    int objective(int station, int tech) {
+        return objective[station * TECHS + tech];
+    }
 
-    public Station(int id, boolean mine, boolean available, List<Integer> tech) {
-        this.id = id;
-        this.mine = mine;
-        this.available = available;
-        this.tech = tech;
+    int tasks(int planet, int tech) {
+        return tasks[planet * TECHS + tech];
+    }
+
+    int contribution(int side, int planet) {
+        return contribution[side * MAX_PLANETS + planet];
+    }
+
+    int bonus(int planet, int index) {
+        return planetBonus[planet * 2 + index];
     }
-}
 
-class Planet {
+    int held(int side, int bonus) {
+        return inventory[side * Bonus.COUNT + bonus];
+    }
 
-    public int id;
-    public List<Integer> tasks;
-    public int myContribution;
-    public int oppContribution;
-    public int colonizationScore;
-    public List<String> bonuses;
+    boolean isOver() {
+        return sectorIndex >= SECTORS || round >= MAX_ROUNDS;
+    }
 
-    public Planet(int id, List<Integer> tasks, int myContribution, int oppContribution, int colonizationScore,
-            List<String> bonuses) {
-        this.id = id;
-        this.tasks = tasks;
-        this.myContribution = myContribution;
-        this.oppContribution = oppContribution;
-        this.colonizationScore = colonizationScore;
-        this.bonuses = bonuses;
+    /**
+     * Final score of a side if the game ended now: colonization points, POINTS
+     * bonuses and reached station objectives.
+     */
+    int score(int side) {
+        int score = colonizationPoints[side];
+        for (int bonus = Bonus.POINTS_1; bonus <= Bonus.POINTS_3; bonus++) {
+            score += held(side, bonus) * Bonus.points(bonus);
+        }
+        for (int station = 0; station < STATIONS; station++) {
+            if (stationOwner[station] == side && objectiveReached(station)) {
+                score += objectiveScore[station];
+            }
+        }
+        return score;
     }
 
-    int majority() {
-        return (int) Math.ceil(totalPrice() / 2.0);
+    boolean objectiveReached(int station) {
+        return Lanes.covers(techLanes[station], objectiveLanes[station]);
     }
 
-    int totalPrice() {
-        int totalPrice = 0;
-        for (int task : tasks) {
-            totalPrice += task;
+    /**
+     * Zeroes the slots from planetCount on. The input only lists the open planets,
+     * so without this a closed slot keeps whatever an earlier turn left there.
+     */
+    private void clearClosedPlanets() {
+        for (int planet = planetCount; planet < MAX_PLANETS; planet++) {
+            planetId[planet] = 0;
+            Arrays.fill(tasks, planet * TECHS, (planet + 1) * TECHS, 0);
+            contribution[ME * MAX_PLANETS + planet] = 0;
+            contribution[OPP * MAX_PLANETS + planet] = 0;
+            colonizationScore[planet] = 0;
+            planetBonus[planet * 2] = 0;
+            planetBonus[planet * 2 + 1] = 0;
         }
-        return totalPrice + myContribution + oppContribution;
     }
 
-    int remainingPrice() {
-        int price = 0;
-        for (int task : tasks) {
-            price += task;
+    void copyFrom(GameState other) {
+        sectorIndex = other.sectorIndex;
+        System.arraycopy(other.stationId, 0, stationId, 0, STATIONS);
+        System.arraycopy(other.stationOwner, 0, stationOwner, 0, STATIONS);
+        System.arraycopy(other.available, 0, available, 0, STATIONS);
+        System.arraycopy(other.tech, 0, tech, 0, tech.length);
+        System.arraycopy(other.objective, 0, objective, 0, objective.length);
+        System.arraycopy(other.objectiveScore, 0, objectiveScore, 0, STATIONS);
+        planetCount = other.planetCount;
+        System.arraycopy(other.planetId, 0, planetId, 0, MAX_PLANETS);
+        System.arraycopy(other.tasks, 0, tasks, 0, tasks.length);
+        System.arraycopy(other.contribution, 0, contribution, 0, contribution.length);
+        System.arraycopy(other.colonizationScore, 0, colonizationScore, 0, MAX_PLANETS);
+        System.arraycopy(other.planetBonus, 0, planetBonus, 0, planetBonus.length);
+        System.arraycopy(other.colonizationPoints, 0, colonizationPoints, 0, 2);
+        System.arraycopy(other.inventory, 0, inventory, 0, inventory.length);
+        activeSide = other.activeSide;
+        round = other.round;
+        colonizedInSector = other.colonizedInSector;
+        System.arraycopy(other.colonized, 0, colonized, 0, MAX_PLANETS);
+        System.arraycopy(other.preference, 0, preference, 0, preference.length);
+        artifact = other.artifact;
+        hash = other.hash;
+        System.arraycopy(other.techCode, 0, techCode, 0, STATIONS);
+        System.arraycopy(other.taskCode, 0, taskCode, 0, MAX_PLANETS);
+        System.arraycopy(other.techLanes, 0, techLanes, 0, STATIONS);
+        System.arraycopy(other.taskLanes, 0, taskLanes, 0, MAX_PLANETS);
+        System.arraycopy(other.objectiveLanes, 0, objectiveLanes, 0, STATIONS);
+        System.arraycopy(other.remaining, 0, remaining, 0, MAX_PLANETS);
+        System.arraycopy(other.total, 0, total, 0, MAX_PLANETS);
+    }
+
+    /**
+     * Recomputes the derived fields and the hash after the arrays were written
+     * directly. The forward model keeps them up to date on its own.
+     */
+    void refresh() {
+        for (int station = 0; station < STATIONS; station++) {
+            techCode[station] = PriceTables.code(tech, station * TECHS);
+            techLanes[station] = Lanes.pack(tech, station * TECHS);
+            objectiveLanes[station] = Lanes.pack(objective, station * TECHS);
         }
-        return price;
+        for (int planet = 0; planet < MAX_PLANETS; planet++) {
+            taskCode[planet] = PriceTables.code(tasks, planet * TECHS);
+            taskLanes[planet] = Lanes.pack(tasks, planet * TECHS);
+            int price = Lanes.sum(taskLanes[planet]);
+            remaining[planet] = price;
+            total[planet] = price + contribution(ME, planet) + contribution(OPP, planet);
+        }
+        hash = Zobrist.hash(this);
     }
-}
 
-class Game {
+    /**
+     * Reduces a forward model position to what readTurn makes of the protocol
+     * input: open planets moved to the front slots, no hidden state, ME to play.
+     */
+    void toTurnInput() {
+        int open = 0;
+        for (int planet = 0; planet < planetCount; planet++) {
+            if (colonized[planet]) {
+                continue;
+            }
+            if (open != planet) {
+                planetId[open] = planetId[planet];
+                System.arraycopy(tasks, planet * TECHS, tasks, open * TECHS, TECHS);
+                contribution[open] = contribution[planet];
+                contribution[MAX_PLANETS + open] = contribution[MAX_PLANETS + planet];
+                colonizationScore[open] = colonizationScore[planet];
+                planetBonus[open * 2] = planetBonus[planet * 2];
+                planetBonus[open * 2 + 1] = planetBonus[planet * 2 + 1];
+            }
+            open++;
+        }
+        planetCount = open;
+        resetHidden();
+        refresh();
+    }
+
+    /**
+     * Sets what the turn input doesn't show to what it implies: ME to play, the
+     * slots from planetCount on colonized and cleared, nothing pending. Two equal
+     * inputs then give equal arrays and the same hash.
+     */
+    void resetHidden() {
+        clearClosedPlanets();
+        activeSide = ME;
+        round = 0;
+        artifact = NO_ARTIFACT;
+        colonizedInSector = MAX_PLANETS - planetCount;
+        Arrays.fill(preference, 0);
+        for (int planet = 0; planet < MAX_PLANETS; planet++) {
+            colonized[planet] = planet >= planetCount;
+        }
+    }
 
-    public int sectorIndex;
-    public Map<Integer, StationObjective> stationObjectives;
-    public List<Station> myStations;
-    public List<Station> oppStations;
-    public List<Planet> planets;
-    public List<String> myBonuses;
-    public List<String> oppBonuses;
-    public int myColonizationScore;
-    public int oppColonizationScore;
+    int stationSlot(int id) {
+        for (int station = 0; station < STATIONS; station++) {
+            if (stationId[station] == id) {
+                return station;
+            }
+        }
+        throw new IllegalArgumentException("Unknown station " + id);
+    }
 
-    static class StationPlanetPair {
-        Station station;
-        Planet planet;
+    /**
+     * The objective lines, as the protocol sends them before the first turn.
+     */
+    void appendObjectives(StringBuilder text) {
+        for (int station = 0; station < STATIONS; station++) {
+            text.append(stationId[station]).append(' ').append(stationOwner[station] == ME ? 1 : 0).append(' ')
+                    .append(objectiveScore[station]);
+            for (int i = 0; i < TECHS; i++) {
+                text.append(' ').append(objective(station, i));
+            }
+            text.append('\n');
+        }
+    }
 
-        public StationPlanetPair(Station station, Planet planet) {
-            this.station = station;
-            this.planet = planet;
+    /**
+     * The turn input, in the order Player.readTurn reads it. Only the open
+     * planets, the bonuses grouped by side and kind.
+     */
+    void appendTurn(StringBuilder text) {
+        text.append(sectorIndex).append('\n');
+        for (int station = 0; station < STATIONS; station++) {
+            text.append(stationId[station]).append(' ').append(stationOwner[station] == ME ? 1 : 0).append(' ')
+                    .append(available[station] ? 1 : 0);
+            for (int i = 0; i < TECHS; i++) {
+                text.append(' ').append(tech(station, i));
+            }
+            text.append('\n');
+        }
+        text.append(planetCount).append('\n');
+        for (int planet = 0; planet < planetCount; planet++) {
+            text.append(planetId[planet]);
+            for (int i = 0; i < TECHS; i++) {
+                text.append(' ').append(tasks(planet, i));
+            }
+            text.append(' ').append(contribution(ME, planet)).append(' ').append(contribution(OPP, planet))
+                    .append(' ').append(colonizationScore[planet]).append(' ').append(Bonus.NAMES[bonus(planet, 0)])
+                    .append(' ').append(Bonus.NAMES[bonus(planet, 1)]).append('\n');
+        }
+        int bonuses = 0;
+        for (int count : inventory) {
+            bonuses += count;
         }
+        text.append(bonuses).append('\n');
+        for (int side = ME; side <= OPP; side++) {
+            for (int bonus = 0; bonus < Bonus.COUNT; bonus++) {
+                for (int i = 0; i < held(side, bonus); i++) {
+                    text.append(side == ME ? 1 : 0).append(' ').append(Bonus.NAMES[bonus]).append('\n');
+                }
+            }
+        }
+        text.append(colonizationPoints[ME]).append('\n');
+        text.append(colonizationPoints[OPP]).append('\n');
+    }
+
+    int remainingPrice(int planet) {
+        return remaining[planet];
+    }
+
+    int totalPrice(int planet) {
+        return total[planet];
+    }
+
+    int majority(int planet) {
+        return PriceTables.majority(total[planet]);
+    }
+
+    /**
+     * Tasks of planet that station's tech covers.
+     */
+    int investable(int station, int planet) {
+        return PriceTables.investable(techCode[station], taskCode[planet]);
     }
+}
+
+class Game {
 
-    Map<StationPlanetPair, Integer> ratedPairs;
+    public GameState state;
+    public BotConfig config;
+    public int turn;
+    // Where commands and debug output go, tools swap these for their own streams
+    public PrintStream out = System.out;
+    public PrintStream err = System.err;
+    // Exceptions play() caught and covered with a fallback command. The bot plays
+    // on, tools read this to tell a bug from a weak move.
+    public int failures;
+
+    // Reused buffers for the station and planet filters, hold slots into state
+    private final int[] availableStations = new int[GameState.STATIONS];
+    private final int[] relevantPlanets = new int[GameState.MAX_PLANETS];
+    private final int[] upgradeOrder = new int[GameState.STATIONS];
+    // Commands are written from here, see send()
+    private final CommandWriter command = new CommandWriter();
+    // Whether this turn's command is out already
+    private boolean sent;
+
+    private MonteCarloSearch search;
+    private ParallelSearch parallel;
+    private ChainPlanner planner;
+    private EndgameSolver endgame;
+    // Next step of the planner's chain, and the input hash we expect to see for it
+    private int planStep;
+    private long planHash;
+    private Ponderer ponderer;
+    // Our last search move while the tree is still rooted where we played it
+    private int lastMove = Move.NONE;
+    TurnStats stats;
+    final DebugLog log;
 
     public Game() {
-        sectorIndex = 0;
-        myStations = new ArrayList<>();
-        oppStations = new ArrayList<>();
-        planets = new ArrayList<>();
-        myBonuses = new ArrayList<>();
-        oppBonuses = new ArrayList<>();
-        stationObjectives = new HashMap<>();
-        myColonizationScore = 0;
-        oppColonizationScore = 0;
-        ratedPairs = new HashMap<>();
+        this(new BotConfig());
+    }
+
+    public Game(BotConfig config) {
+        this.config = config;
+        state = new GameState();
+        log = new DebugLog(config.logLevel);
+        if (config.mode == BotConfig.MCTS && config.threads > 1) {
+            parallel = new ParallelSearch(config.seed, config.threads);
+        } else if (config.mode == BotConfig.MCTS) {
+            search = new MonteCarloSearch(config.seed);
+            if (config.ponder) {
+                ponderer = new Ponderer(search);
+            }
+        }
+        if (config.mode == BotConfig.PLAN) {
+            planner = new ChainPlanner();
+        }
+        if (config.endgame) {
+            endgame = new EndgameSolver();
+        }
+        if (config.stats) {
+            stats = new TurnStats(config.jfr);
+        }
     }
 
     enum Tech {
         TERRA, ETHIC, ENGINEERING, AGRICULTURE;
     }
 
+    /**
+     * Decides and prints the command for the state read this turn.
+     */
     public void play() {
-        ratedPairs.clear();
+        long start = System.nanoTime();
+        stopPondering();
+        turn++;
+        log.turn = turn;
+        log.add(DebugLog.INFO, DebugLog.READ, state.sectorIndex, state.planetCount,
+                state.colonizationPoints[GameState.ME], state.colonizationPoints[GameState.OPP], 0);
+        if (stats != null) {
+            stats.startTurn(start);
+        }
+        if (turn == 1 && config.warmupMillis > 0) {
+            int runs = WarmUp.run(this, start + config.warmupMillis * 1_000_000L);
+            log.add(DebugLog.INFO, DebugLog.WARMUP, runs, System.nanoTime() - start, 0, 0, 0);
+        }
+        int move = Move.NONE;
+        sent = false;
+        // Safeguard, whatever mode broke we still send a command
+        try {
+            // Our turns include bonus actions, so two rounds per turn is plenty
+            if (endgame != null && endgame.applies(state, 2 * turn) && playEndgame(start)) {
+                // solved, nothing to ponder on either
+            } else if (parallel != null) {
+                playParallel(start);
+            } else if (search != null) {
+                move = playSearch(start);
+            } else if (planner != null) {
+                playPlan(start);
+            } else {
+                playGreedy();
+            }
+        } catch (Exception e) {
+            failed(e);
+            move = Move.NONE;
+            if (!sent) {
+                playGreedy();
+            }
+        }
+        // Flushed inside the measurement, formatting the log is part of what a turn costs
+        log.flush(err);
+        if (stats != null) {
+            stats.endTurn(turn, log);
+            log.flush(err);
+        }
+        // Bonus actions get the next input right away, nothing to ponder on
+        if (ponderer != null && Move.isMainAction(move)) {
+            out.flush();
+            if (ponderer.start(move)) {
+                // the tree now belongs to the predicted position
+                lastMove = Move.NONE;
+            }
+        }
+    }
+
+    /**
+     * Gets ready for another game in the same process (multiGame). Searches start
+     * from scratch on the first turn anyway, what's left is the turn count and
+     * the state carried from turn to turn.
+     */
+    public void newGame() {
+        stopPondering();
+        turn = 0;
+        lastMove = Move.NONE;
+        planStep = 0;
+        if (config.stats) {
+            stats = new TurnStats(config.jfr);
+        }
+    }
+
+    /**
+     * Releases the threads of the search and the ponderer. Tools and the warm-up
+     * that throw Games away call it, each Game holds its own.
+     */
+    public void close() {
+        if (ponderer != null) {
+            ponderer.close();
+        }
+        if (parallel != null) {
+            parallel.close();
+        }
+    }
+
+    /**
+     * Ends pondering on the opponent's turn, if it's running. Hosts call this as
+     * soon as the next input shows up, play() does it anyway.
+     */
+    public void stopPondering() {
+        if (ponderer != null) {
+            ponderer.stop();
+        }
+    }
+
+    /**
+     * Solves the rest of the game with half the turn budget. Only a proven move is
+     * played, otherwise the regular mode gets the remaining time.
+     *
+     * @return true if the command was printed
+     */
+    private boolean playEndgame(long start) {
+        long budget = (turn == 1 ? config.firstTurnMillis : config.turnMillis) * 1_000_000L;
+        int move = endgame.solve(state, start + budget / 2);
+        log.add(DebugLog.INFO, DebugLog.ENDGAME, endgame.proven ? 1 : 0, endgame.depth, endgame.value, endgame.nodes,
+                endgame.elapsedNanos);
+        if (!endgame.proven) {
+            return false;
+        }
+        send(state, move);
+        // The search tree and the plan don't know about this move
+        lastMove = Move.NONE;
+        planStep = 0;
+        return true;
+    }
+
+    /**
+     * Plans the whole turn on its first input and plays it one action per input.
+     * The chain is dropped and planned again if an input isn't what the plan
+     * expects, after a rejected command for example.
+     */
+    private void playPlan(long start) {
+        if (planStep == 0 || planStep >= planner.planLength || state.hash != planHash) {
+            long budget = (turn == 1 ? config.firstTurnMillis : config.turnMillis) * 1_000_000L;
+            planner.plan(state, start + budget);
+            planStep = 0;
+            log.add(DebugLog.DEBUG, DebugLog.PLAN, planner.planLength, planner.scored, 0, 0, 0);
+            for (int i = 0; i < planner.planLength; i++) {
+                int step = planner.plan[i];
+                log.add(DebugLog.DEBUG, DebugLog.STEP, step, Move.stationId(state, step), Move.planetId(state, step),
+                        0, 0);
+            }
+        }
+        int move = planner.plan[planStep++];
+        if (planStep < planner.planLength) {
+            planHash = planner.expected[planStep];
+        } else {
+            planStep = 0;
+        }
+        send(state, move);
+    }
+
+    private void playGreedy() {
         // main actions: COLONIZE | RESUPPLY
         // bonus actions: ENERGY_CORE | ALIEN_ARTIFACT | TECH_RESEARCH | NEW_TECH
 
@@ -127,8 +550,7 @@ class Game {
                 return;
             }
         } catch (Exception e) {
-            System.err.print("We f'ed up in main actions somewhere: ");
-            e.printStackTrace();
+            failed(e);
         }
 
         try {
@@ -139,55 +561,99 @@ class Game {
                 return;
             }
         } catch (Exception e) {
-            System.err.print("We f'ed up in main actions somewhere: ");
-            e.printStackTrace();
+            failed(e);
         }
-        System.out.println("RESUPPLY");
+        send(state, Move.RESUPPLY);
     }
 
-    private boolean checkTechupgrades() {
-        // Build a map of all tech upgrades we currently have
-        // Key: level the upgrade will generate
-        // Value: amount of upgrades of this type (Maybe unneeded?)
-        Map<Integer, Integer> upgrades = new HashMap<>(3);
-        for (int i = 2; i <= 4; i++) {
-            upgrades.put(i, 0);
-        }
-        for (String bonus : myBonuses) {
-            if (bonus.startsWith("TECH_RESEARCH")) {
-                int value = Integer.parseInt(bonus.substring(bonus.length() - 1));
-                upgrades.merge(value, 1, Integer::sum);
+    /**
+     * Counts the failure and prints what the log still holds for context, then the
+     * exception.
+     */
+    private void failed(Exception e) {
+        failures++;
+        log.dump(err);
+        err.print("We f'ed up somewhere: ");
+        e.printStackTrace(err);
+    }
 
-            }
+    /**
+     * Let the tree search pick the move, both bonus and main actions.
+     */
+    private int playSearch(long start) {
+        long budget = (turn == 1 ? config.firstTurnMillis : config.turnMillis) * 1_000_000L;
+        int move;
+        int carried = DebugLog.FRESH;
+        long carriedCount = 0;
+        if (ponderer != null && ponderer.hit(state)) {
+            // The tree already holds this position, keep growing it
+            search.state.round = state.round;
+            search.run(start + budget);
+            move = search.bestMove();
+            carried = DebugLog.PONDER_HIT;
+            carriedCount = search.ponderPlayouts;
+        } else if (config.reuse && search.reuse(lastMove, state)) {
+            search.run(start + budget);
+            move = search.bestMove();
+            carried = DebugLog.REUSED;
+            carriedCount = search.reusedNodes;
+        } else {
+            move = search.search(state, start + budget);
         }
+        lastMove = move;
+        log.add(DebugLog.INFO, DebugLog.MCTS, search.playouts, search.elapsedNanos, carried, carriedCount, 0);
+        // A reused tree keeps its own planet slots, the search state has them
+        send(search.state, move);
+        return move;
+    }
+
+    /**
+     * Like playSearch, on all config.threads threads.
+     */
+    private void playParallel(long start) {
+        long budget = (turn == 1 ? config.firstTurnMillis : config.turnMillis) * 1_000_000L;
+        int move = parallel.search(state, start + budget);
+        log.add(DebugLog.INFO, DebugLog.MCTS, parallel.playouts, parallel.elapsedNanos, DebugLog.FRESH, 0, 0);
+        send(state, move);
+    }
 
-        // Order stations by score, try to upgrade where the most gain is
-        List<Station> upgradeOrder = new ArrayList<>();
+    boolean checkTechupgrades() {
+        // Order stations by score, try to upgrade where the most gain is.
         // Don't boost unavailable stations, because we can't use the new bonus right
         // away. Also ignore fulley upgrades stations
-        for (Station station : getAvailableStations()) {
+        int stationCount = getAvailableStations();
+        int upgradeCount = 0;
+        for (int i = 0; i < stationCount; i++) {
+            int station = availableStations[i];
             if (!techObjectiveReached(station)) {
-                upgradeOrder.add(station);
+                upgradeOrder[upgradeCount++] = station;
             }
         }
-        // sort by highest gain
-        upgradeOrder.sort((s1, s2) -> {
-            return Integer.compare(stationObjectives.get(s1.id).objectiveScore,
-                    stationObjectives.get(s2.id).objectiveScore);
-        });
-        Collections.reverse(upgradeOrder);
+        // sort by highest gain, insertion sort is plenty for four stations
+        for (int i = 1; i < upgradeCount; i++) {
+            int station = upgradeOrder[i];
+            int j = i - 1;
+            while (j >= 0 && state.objectiveScore[upgradeOrder[j]] < state.objectiveScore[station]) {
+                upgradeOrder[j + 1] = upgradeOrder[j];
+                j--;
+            }
+            upgradeOrder[j + 1] = station;
+        }
 
         // Loop until we can upgrade something
-        for (Station station : upgradeOrder) {
-            for (int i = 0; i < stationObjectives.get(station.id).objective.size(); i++) {
-                int objective = stationObjectives.get(station.id).objective.get(i);
-                int current = station.tech.get(i);
+        for (int u = 0; u < upgradeCount; u++) {
+            int station = upgradeOrder[u];
+            for (int i = 0; i < GameState.TECHS; i++) {
+                int objective = state.objective(station, i);
+                int current = state.tech(station, i);
                 if (current < objective) {
                     // To get from 0 to 1, we must use NEW_TECH instead
-                    if (current > 0 && upgrades.get(current + 1) > 0) {
+                    if (current > 0 && current < PriceTables.MAX_LEVEL
+                            && state.held(GameState.ME, Bonus.research(current + 1)) > 0) {
                         // We can upgrade this tech, so do it.
-                        System.err.println("Upgrading tech " + i + " of station " + station.id + " to " + current + 1);
-                        System.out.println("TECH_RESEARCH " + station.id + " " + i);
+                        log.add(DebugLog.INFO, DebugLog.UPGRADE, i, state.stationId[station], current + 1, 0, 0);
+                        send(state, Move.techResearch(station, i));
+                        return true;
                     }
                 }
             }
@@ -195,41 +661,39 @@ class Game {
         return false;
     }
 
-    private boolean techObjectiveReached(Station station) {
-        for (int i = 0; i < station.tech.size(); i++) {
-            if (station.tech.get(i) < stationObjectives.get(station.id).objective.get(i)) {
-                // If any techlevel is lower than its objective, station is still has to be
-                // upgraded
-                return false;
-            }
-        }
-        return true;
+    private boolean techObjectiveReached(int station) {
+        // If any techlevel is lower than its objective, station is still has to be
+        // upgraded
+        return state.objectiveReached(station);
     }
 
-    private boolean investInPlanet() {
-        System.err.print("Ratings: ");
-        for (Station myStation : getAvailableStations()) {
-            for (Planet planet : getRelevantPlanets()) {
-                StationPlanetPair pair = new StationPlanetPair(myStation, planet);
-                int rating = ratePair(myStation, planet);
-                System.err.print("[(" + myStation.id + "->" + planet.id + "):" + rating + "] ");
-                ratedPairs.put(pair, rating);
+    boolean investInPlanet() {
+        int stationCount = getAvailableStations();
+        int planetCount = getRelevantPlanets();
+        int bestStation = -1;
+        int bestPlanet = -1;
+        double bestRating = 0; // only moves rated above 0 are worth doing
+        for (int s = 0; s < stationCount; s++) {
+            int station = availableStations[s];
+            int techs = state.techCode[station];
+            for (int p = 0; p < planetCount; p++) {
+                int planet = relevantPlanets[p];
+                double rating = rate(PriceTables.investable(techs, state.taskCode[planet]), planet);
+                log.add(DebugLog.DEBUG, DebugLog.RATING, state.stationId[station], state.planetId[planet], rating);
+                // Strictly greater, so ties go to the lowest station slot, then the lowest
+                // planet slot
+                if (rating > bestRating) {
+                    bestRating = rating;
+                    bestStation = station;
+                    bestPlanet = planet;
+                }
             }
         }
-        System.err.println();
-
-        Optional<Map.Entry<StationPlanetPair, Integer>> bestRating = ratedPairs.entrySet().stream()
-                .max(Comparator.comparingInt(Map.Entry::getValue));
-
-        if (bestRating.isPresent()) {
-            StationPlanetPair bestPair = bestRating.get().getKey();
-            int rating = ratedPairs.get(bestPair);
-            if (rating > 0) {
-                System.err
-                        .println("Chosen: [(" + bestPair.station.id + "->" + bestPair.planet.id + "):" + rating + "]");
-                colonize(bestPair);
-                return true;
-            }
+        if (bestStation >= 0) {
+            log.add(DebugLog.DEBUG, DebugLog.CHOSEN, state.stationId[bestStation], state.planetId[bestPlanet],
+                    bestRating);
+            colonize(bestStation, bestPlanet);
+            return true;
         }
         return false;
     }
@@ -242,199 +706,2979 @@ class Game {
      * * Have we invested anything into the planet yet?
      * * Avoid investing if it would help the opponent
      * 
-     * @param station
-     * @param planet
+     * @param station slot of the station in state
+     * @param planet  slot of the planet in state
      * @return score of the move. the higher the value, the preferable. If 0, don't
      *         do the move.
      */
-    private int ratePair(Station station, Planet planet) {
-        List<Integer> tech = station.tech;
-        List<Integer> tasks = planet.tasks;
-
-        int investable = 0;
-        for (int i = 0; i < 4; i++) {
-            investable += Math.min(tech.get(i), tasks.get(i));
-        }
+    double ratePair(int station, int planet) {
+        return rate(state.investable(station, planet), planet);
+    }
 
+    /**
+     * ratePair with the tasks the station covers already looked up.
+     */
+    private double rate(int investable, int planet) {
+        double[] weights = config.weights;
         // This move wouldn't do anything, no sense in checking other conditions on this
         // move
         if (investable == 0)
             return 0;
 
+        int majority = state.majority(planet);
+        int myContribution = state.contribution(GameState.ME, planet);
         // Can we sack a planet with our move?
-        if ((planet.myContribution + investable) >= planet.majority()) {
-            int score = 100; // can sack in one move. massivly prefer the move
-            score += planet.colonizationScore; // the higher the planet score, the preferable
+        if ((myContribution + investable) >= majority) {
+            double score = weights[Weights.SACK]; // can sack in one move. massivly prefer the move
+            // the higher the planet score, the preferable
+            score += weights[Weights.SACK_PLANET_SCORE] * state.colonizationScore[planet];
 
             // Check if planet has a points bonus. If yes, add that to the score.
-            for (String item : planet.bonuses) {
-                if (item.startsWith("POINTS_")) {
-                    int bonus = Integer.parseInt(item.substring(item.length() - 1));
-                    score += bonus;
+            for (int i = 0; i < 2; i++) {
+                int bonus = Bonus.points(state.bonus(planet, i));
+                if (bonus > 0) {
+                    score += weights[Weights.SACK_POINTS_BONUS] * bonus;
                     break;
                 }
             }
             return score;
         }
         // Can't sack planet in one move, but can we still get it?
-        if (planet.oppContribution < planet.majority()) {
-            return investable;
+        if (state.contribution(GameState.OPP, planet) < majority) {
+            return weights[Weights.INVESTABLE] * investable;
         }
         // Can't get the planet anymore. Have we already invested? If not, doing so will
         // at least give us a bonus
-        if (planet.myContribution == 0) {
+        if (myContribution == 0) {
             // We can't win the planet anymore, so investing 1 of 5 tech makes no difference
             // anymore,
             // so give them all the same value.
-            return 1;
+            return weights[Weights.LOST_FIRST];
         }
         // Can't get the planet anymore. No sense in helping the opponent.
-        return 0;
+        return weights[Weights.LOST_INVESTED];
     }
 
-    void colonize(StationPlanetPair pair) {
-        int bonusIndex = bonusIndex(pair.station, pair.planet);
-        System.out.println("COLONIZE " + pair.station.id + " " + pair.planet.id + " " + bonusIndex);
+    void colonize(int station, int planet) {
+        int bonusIndex = bonusIndex(planet);
+        send(state, Move.colonize(station, planet, bonusIndex));
     }
 
-    private int bonusIndex(Station myStation, Planet planet) {
-        int result = 0;
-        int points = 0; // Number of additional points we get via bonus
-        // If there is a point bonus, prefer the highest one
-        for (int i = 0; i < 2; i++) {
-            String bonus = planet.bonuses.get(i);
-            if (bonus.startsWith("POINTS_")) {
-                int value = Integer.parseInt(bonus.substring(bonus.length() - 1));
-                if (value > points) {
-                    points = value;
-                    result = i;
-                }
-            }
-        }
-        if (points > 0)
-            return result;
-
-        // TODO: Other boni:
-        // * If there's a tech bonus, and we still have need for it, then choose needed
-        // bonus, else
-        // * Choose alien artifacts, they allow us to boost a planet, so we may colonize
-        // it in one turn, else
-        // * Choose energy core
-        return result;
+    /**
+     * Prints move as the command for the slots in view and flushes it.
+     */
+    void send(GameState view, int move) {
+        command.move(view, move).send(out);
+        sent = true;
     }
 
-    List<Station> getAvailableStations() {
-        return myStations.stream()
-                .filter(station -> station.available)
-                .collect(Collectors.toList());
+    private int bonusIndex(int planet) {
+        // Prefer the bonus worth more, by default the highest POINTS bonus, else the
+        // first one. Every bonus kind has a weight of its own, the order of artifacts,
+        // energy cores and tech research is the tuner's to find
+        double[] weights = config.weights;
+        double first = weights[Weights.BONUS + state.bonus(planet, 0)];
+        double second = weights[Weights.BONUS + state.bonus(planet, 1)];
+        return second > first ? 1 : 0;
     }
 
-    List<Planet> getRelevantPlanets() {
-        return planets.stream()
-                .filter(planet -> planet.oppContribution < planet.myContribution + planet.remainingPrice())
-                .collect(Collectors.toList());
+    /**
+     * Collects the slots of our available stations into availableStations.
+     * 
+     * @return number of stations found
+     */
+    int getAvailableStations() {
+        int count = 0;
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            if (state.stationOwner[station] == GameState.ME && state.available[station]) {
+                availableStations[count++] = station;
+            }
+        }
+        return count;
     }
 
-    boolean shouldUseEnergyCore() {
-        boolean energyCoreAvailable = false;
-        for (String bonus : myBonuses) {
-            if (bonus.equals("ENERGY_CORE")) {
-                energyCoreAvailable = true;
-                break;
+    /**
+     * Collects the slots of all planets we can still win into relevantPlanets.
+     * 
+     * @return number of planets found
+     */
+    int getRelevantPlanets() {
+        int count = 0;
+        for (int planet = 0; planet < state.planetCount; planet++) {
+            if (!state.colonized[planet] && state.contribution(GameState.OPP, planet) < state.contribution(GameState.ME, planet)
+                    + state.remainingPrice(planet)) {
+                relevantPlanets[count++] = planet;
             }
         }
-        if (getAvailableStations().size() == 0 && energyCoreAvailable) {
-            System.out.println("ENERGY_CORE");
+        return count;
+    }
+
+    boolean shouldUseEnergyCore() {
+        if (state.held(GameState.ME, Bonus.ENERGY_CORE) > 0 && getAvailableStations() == 0) {
+            send(state, Move.ENERGY_CORE);
             return true;
         }
         return false;
     }
 }
 
-class Player {
+/**
+ * Completion bonuses as small int codes. The reader maps the protocol tokens to
+ * these, so nothing after parsing has to compare strings.
+ */
+class Bonus {
+    static final int ENERGY_CORE = 0;
+    static final int ALIEN_ARTIFACT = 1;
+    static final int TECH_RESEARCH_2 = 2;
+    static final int TECH_RESEARCH_3 = 3;
+    static final int TECH_RESEARCH_4 = 4;
+    static final int POINTS_1 = 5;
+    static final int POINTS_2 = 6;
+    static final int POINTS_3 = 7;
+    static final int COUNT = 8;
 
-    public static void main(String args[]) {
+    static final String[] NAMES = {
+            "ENERGY_CORE",
+            "ALIEN_ARTIFACT",
+            "TECH_RESEARCH_2",
+            "TECH_RESEARCH_3",
+            "TECH_RESEARCH_4",
+            "POINTS_1",
+            "POINTS_2",
+            "POINTS_3",
+    };
+
+    /**
+     * @return colonization points a POINTS_n bonus is worth, 0 for any other bonus
+     */
+    static int points(int bonus) {
+        return bonus >= POINTS_1 ? bonus - POINTS_1 + 1 : 0;
+    }
 
-        Game mainGame = new Game();
+    /**
+     * @return the TECH_RESEARCH_n bonus that raises a tech to level
+     */
+    static int research(int level) {
+        if (level < 2 || level > 4) {
+            throw new IllegalArgumentException("No research bonus for level " + level);
+        }
+        return TECH_RESEARCH_2 + level - 2;
+    }
+}
 
-        Scanner in = new Scanner(System.in);
-        for (int i = 0; i < 8; i++) {
-            int stationId = in.nextInt();
-            boolean mine = in.nextInt() == 1;
-            int objectiveScore = in.nextInt(); // receive these points if tech level objectives are met
-            int obj0 = in.nextInt();
-            int obj1 = in.nextInt();
-            int obj2 = in.nextInt();
-            int obj3 = in.nextInt();
-            StationObjective stationObjective = new StationObjective(stationId, objectiveScore,
-                    Arrays.asList(obj0, obj1, obj2, obj3), mine);
-            mainGame.stationObjectives.put(stationId, stationObjective);
-        }
-        System.err.println("Read global state");
-
-        // game loop
-        while (true) {
-            int sectorIndex = in.nextInt();
-            mainGame.sectorIndex = sectorIndex;
-            mainGame.myStations.clear();
-            mainGame.oppStations.clear();
-            for (int i = 0; i < 8; i++) {
-                int stationId = in.nextInt();
-                boolean mine = in.nextInt() == 1;
-                boolean available = in.nextInt() == 1;
-                int tech0 = in.nextInt();
-                int tech1 = in.nextInt();
-                int tech2 = in.nextInt();
-                int tech3 = in.nextInt();
-
-                Station station = new Station(stationId, mine, available, Arrays.asList(tech0, tech1, tech2, tech3));
-                if (mine) {
-                    mainGame.myStations.add(station);
-                } else {
-                    mainGame.oppStations.add(station);
-                }
-            }
-            mainGame.planets.clear();
-            int planetCount = in.nextInt();
-            for (int i = 0; i < planetCount; i++) {
-                int planetId = in.nextInt();
-                int tasks0 = in.nextInt();
-                int tasks1 = in.nextInt();
-                int tasks2 = in.nextInt();
-                int tasks3 = in.nextInt();
-                int myContribution = in.nextInt(); // the amount of tasks you have already completed
-                int oppContribution = in.nextInt();
-                int colonizationScore = in.nextInt(); // points awarded to the colonizer having completed the most tasks
-                String bonus0 = in.next();
-                String bonus1 = in.next();
-                Planet planet = new Planet(
-                        planetId,
-                        Arrays.asList(tasks0, tasks1, tasks2, tasks3),
-                        myContribution,
-                        oppContribution,
-                        colonizationScore,
-                        Arrays.asList(bonus0, bonus1));
-                mainGame.planets.add(planet);
-            }
-            int bonusCount = in.nextInt(); // bonuses in both you and your opponent's inventories
-            // reset bonuses as we are parsing them
-            mainGame.myBonuses.clear();
-            mainGame.oppBonuses.clear();
-            for (int i = 0; i < bonusCount; i++) {
-                boolean mine = in.nextInt() == 1;
-                String bonus = in.next();
-                if (mine) {
-                    mainGame.myBonuses.add(bonus);
-                } else {
-                    mainGame.oppBonuses.add(bonus);
-                }
-            }
-            mainGame.myColonizationScore = in.nextInt(); // points from planet colonization, does not include bonus
-                                                         // points
-            mainGame.oppColonizationScore = in.nextInt();
+/**
+ * Actions packed into a single int, so search code can keep them in int arrays.
+ * Bits 0-3 hold the type, then three 4 bit arguments:
+ * * COLONIZE: station slot, planet slot, preferred bonus index
+ * * ALIEN_ARTIFACT: first tech, second tech
+ * * TECH_RESEARCH: station slot, tech
+ * * NEW_TECH: station slot, tech, Bonus code to consume
+ */
+class Move {
+    static final int RESUPPLY = 0;
+    static final int COLONIZE = 1;
+    static final int ENERGY_CORE = 2;
+    static final int ALIEN_ARTIFACT = 3;
+    static final int TECH_RESEARCH = 4;
+    static final int NEW_TECH = 5;
+
+    static final int NONE = -1;
+
+    static int colonize(int station, int planet, int bonusIndex) {
+        return COLONIZE | station << 4 | planet << 8 | bonusIndex << 12;
+    }
 
-            System.err.println("Read round state");
-            mainGame.play();
+    static int alienArtifact(int tech1, int tech2) {
+        return ALIEN_ARTIFACT | tech1 << 4 | tech2 << 8;
+    }
+
+    static int techResearch(int station, int tech) {
+        return TECH_RESEARCH | station << 4 | tech << 8;
+    }
+
+    static int newTech(int station, int tech, int bonus) {
+        return NEW_TECH | station << 4 | tech << 8 | bonus << 12;
+    }
+
+    static int type(int move) {
+        return move & 15;
+    }
+
+    static int first(int move) {
+        return (move >>> 4) & 15;
+    }
+
+    static int second(int move) {
+        return (move >>> 8) & 15;
+    }
+
+    static int third(int move) {
+        return (move >>> 12) & 15;
+    }
+
+    /**
+     * Main actions end the turn, bonus actions let the same side play again.
+     */
+    static boolean isMainAction(int move) {
+        return type(move) <= COLONIZE;
+    }
+
+    /**
+     * Id of the station the move uses, -1 if it doesn't use one.
+     */
+    static int stationId(GameState state, int move) {
+        int type = type(move);
+        return type == COLONIZE || type == TECH_RESEARCH || type == NEW_TECH ? state.stationId[first(move)] : -1;
+    }
+
+    /**
+     * Id of the planet the move colonizes, -1 if it isn't a COLONIZE.
+     */
+    static int planetId(GameState state, int move) {
+        return type(move) == COLONIZE ? state.planetId[second(move)] : -1;
+    }
+
+    static String toCommand(GameState state, int move) {
+        return toCommand(move, stationId(state, move), planetId(state, move));
+    }
+
+    /**
+     * The command with the ids already looked up, for moves kept past their state.
+     */
+    static String toCommand(int move, int stationId, int planetId) {
+        switch (type(move)) {
+            case COLONIZE:
+                return "COLONIZE " + stationId + " " + planetId + " " + third(move);
+            case ENERGY_CORE:
+                return "ENERGY_CORE";
+            case ALIEN_ARTIFACT:
+                return "ALIEN_ARTIFACT " + first(move) + " " + second(move);
+            case TECH_RESEARCH:
+                return "TECH_RESEARCH " + stationId + " " + second(move);
+            case NEW_TECH:
+                return "NEW_TECH " + stationId + " " + second(move) + " " + Bonus.NAMES[third(move)];
+            default:
+                return "RESUPPLY";
+        }
+    }
+}
+
+/**
+ * The game rules, applied to a GameState in place. Every write goes through
+ * set(), which records the previous value in an undo journal, so a search can
+ * apply a line of moves and roll back to any earlier mark() without copying the
+ * state. Nothing here allocates after construction.
+ *
+ * Moves are expected to be legal (see isLegal and generate). New planets after a
+ * sector ends are unknown, the model just moves to the next sector with every
+ * planet closed and leaves it to the caller to fill them in.
+ */
+class ForwardModel {
+    // Field ids for the journal, the low 16 bits of an entry hold the array index
+    static final int AVAILABLE = 1;
+    static final int TECH = 2;
+    static final int TASKS = 3;
+    static final int CONTRIBUTION = 4;
+    static final int COLONIZED = 5;
+    static final int PREFERENCE = 6;
+    static final int INVENTORY = 7;
+    static final int POINTS = 8;
+    static final int ACTIVE_SIDE = 9;
+    static final int ARTIFACT = 10;
+    static final int SECTOR = 11;
+    static final int COLONIZED_IN_SECTOR = 12;
+    static final int ROUND = 13;
+    static final int FIELDS = 14;
+
+    // Pairs of (field << 16 | index, previous value)
+    private int[] journal;
+    private int size;
+
+    ForwardModel() {
+        this(1 << 16);
+    }
+
+    ForwardModel(int journalSize) {
+        journal = new int[journalSize];
+    }
+
+    int mark() {
+        return size;
+    }
+
+    /**
+     * Rolls the state back to how it was when mark was taken.
+     */
+    void undo(GameState state, int mark) {
+        while (size > mark) {
+            int value = journal[--size];
+            int address = journal[--size];
+            int field = address >>> 16;
+            int index = address & 0xFFFF;
+            state.hash ^= Zobrist.key(field, index, get(state, field, index)) ^ Zobrist.key(field, index, value);
+            put(state, field, index, value);
+        }
+    }
+
+    /**
+     * Forgets the journal, keeping the state as it is.
+     */
+    void commit() {
+        size = 0;
+    }
+
+    void apply(GameState state, int move) {
+        int side = state.activeSide;
+        switch (Move.type(move)) {
+            case Move.COLONIZE:
+                colonize(state, side, Move.first(move), Move.second(move), Move.third(move));
+                endTurn(state);
+                break;
+            case Move.RESUPPLY:
+                resupply(state, side);
+                endTurn(state);
+                break;
+            case Move.ENERGY_CORE:
+                consume(state, side, Bonus.ENERGY_CORE);
+                resupply(state, side);
+                break;
+            case Move.ALIEN_ARTIFACT:
+                consume(state, side, Bonus.ALIEN_ARTIFACT);
+                set(state, ARTIFACT, 0, Move.first(move) * GameState.TECHS + Move.second(move));
+                break;
+            case Move.TECH_RESEARCH: {
+                int index = Move.first(move) * GameState.TECHS + Move.second(move);
+                int level = state.tech[index] + 1;
+                consume(state, side, Bonus.TECH_RESEARCH_2 + level - 2);
+                set(state, TECH, index, level);
+                break;
+            }
+            case Move.NEW_TECH:
+                consume(state, side, Move.third(move));
+                set(state, TECH, Move.first(move) * GameState.TECHS + Move.second(move), 1);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown move " + move);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * An illegal command is ignored by the referee and the turn passes to the
+     * opponent.
+     */
+    void skipTurn(GameState state) {
+        endTurn(state);
+    }
+
+    boolean isLegal(GameState state, int move) {
+        int side = state.activeSide;
+        switch (Move.type(move)) {
+            case Move.RESUPPLY:
+                return true;
+            case Move.COLONIZE: {
+                int station = Move.first(move);
+                int planet = Move.second(move);
+                return station < GameState.STATIONS && state.stationOwner[station] == side
+                        && state.available[station] && planet < state.planetCount && !state.colonized[planet]
+                        && Move.third(move) < 2;
+            }
+            case Move.ENERGY_CORE:
+                return state.held(side, Bonus.ENERGY_CORE) > 0;
+            case Move.ALIEN_ARTIFACT:
+                return state.held(side, Bonus.ALIEN_ARTIFACT) > 0 && state.artifact == GameState.NO_ARTIFACT
+                        && Move.first(move) < GameState.TECHS && Move.second(move) < GameState.TECHS;
+            case Move.TECH_RESEARCH: {
+                int station = Move.first(move);
+                if (station >= GameState.STATIONS || state.stationOwner[station] != side
+                        || Move.second(move) >= GameState.TECHS) {
+                    return false;
+                }
+                int level = state.tech(station, Move.second(move));
+                return level >= 1 && level <= 3 && state.held(side, Bonus.TECH_RESEARCH_2 + level - 1) > 0;
+            }
+            case Move.NEW_TECH: {
+                int station = Move.first(move);
+                return station < GameState.STATIONS && state.stationOwner[station] == side
+                        && Move.second(move) < GameState.TECHS && state.tech(station, Move.second(move)) == 0
+                        && Move.third(move) < Bonus.COUNT && state.held(side, Move.third(move)) > 0;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes all legal moves of the active side into moves. COLONIZE moves that
+     * wouldn't complete a single task are left out, and the bonus index is only
+     * varied when the two bonuses differ.
+     * 
+     * @return number of moves written
+     */
+    int generate(GameState state, int[] moves) {
+        int count = 0;
+        int side = state.activeSide;
+        moves[count++] = Move.RESUPPLY;
+        boolean anyDisabled = false;
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            if (state.stationOwner[station] != side) {
+                continue;
+            }
+            if (!state.available[station]) {
+                anyDisabled = true;
+                continue;
+            }
+            for (int planet = 0; planet < state.planetCount; planet++) {
+                if (state.colonized[planet] || completedTasks(state, station, planet) == 0) {
+                    continue;
+                }
+                moves[count++] = Move.colonize(station, planet, 0);
+                if (state.bonus(planet, 0) != state.bonus(planet, 1)) {
+                    moves[count++] = Move.colonize(station, planet, 1);
+                }
+            }
+        }
+        if (anyDisabled && state.held(side, Bonus.ENERGY_CORE) > 0) {
+            moves[count++] = Move.ENERGY_CORE;
+        }
+        if (state.held(side, Bonus.ALIEN_ARTIFACT) > 0 && state.artifact == GameState.NO_ARTIFACT) {
+            for (int tech1 = 0; tech1 < GameState.TECHS; tech1++) {
+                for (int tech2 = tech1; tech2 < GameState.TECHS; tech2++) {
+                    moves[count++] = Move.alienArtifact(tech1, tech2);
+                }
+            }
+        }
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            if (state.stationOwner[station] != side) {
+                continue;
+            }
+            for (int tech = 0; tech < GameState.TECHS; tech++) {
+                int level = state.tech(station, tech);
+                if (level >= 1 && level <= 3 && state.held(side, Bonus.TECH_RESEARCH_2 + level - 1) > 0) {
+                    moves[count++] = Move.techResearch(station, tech);
+                } else if (level == 0) {
+                    for (int bonus = 0; bonus < Bonus.COUNT; bonus++) {
+                        if (state.held(side, bonus) > 0) {
+                            moves[count++] = Move.newTech(station, tech, bonus);
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tasks a COLONIZE of the active side would complete, including a pending alien
+     * artifact.
+     */
+    static int completedTasks(GameState state, int station, int planet) {
+        if (state.artifact == GameState.NO_ARTIFACT) {
+            return state.investable(station, planet);
+        }
+        int done = 0;
+        for (int tech = 0; tech < GameState.TECHS; tech++) {
+            done += Math.min(state.tech(station, tech) + artifactTasks(state, tech), state.tasks(planet, tech));
+        }
+        return done;
+    }
+
+    private static int artifactTasks(GameState state, int tech) {
+        if (state.artifact == GameState.NO_ARTIFACT) {
+            return 0;
+        }
+        int tasks = 0;
+        if (state.artifact / GameState.TECHS == tech) {
+            tasks++;
+        }
+        if (state.artifact % GameState.TECHS == tech) {
+            tasks++;
+        }
+        return tasks;
+    }
+
+    private void colonize(GameState state, int side, int station, int planet, int bonusIndex) {
+        set(state, AVAILABLE, station, 0);
+        int done = 0;
+        int remaining = 0;
+        for (int tech = 0; tech < GameState.TECHS; tech++) {
+            int index = planet * GameState.TECHS + tech;
+            int tasks = state.tasks[index];
+            int completed = Math.min(state.tech(station, tech) + artifactTasks(state, tech), tasks);
+            if (completed > 0) {
+                set(state, TASKS, index, tasks - completed);
+            }
+            done += completed;
+            remaining += tasks - completed;
+        }
+        int contribution = side * GameState.MAX_PLANETS + planet;
+        set(state, CONTRIBUTION, contribution, state.contribution[contribution] + done);
+        set(state, PREFERENCE, contribution, bonusIndex);
+        if (remaining == 0) {
+            completePlanet(state, planet);
+        }
+    }
+
+    /**
+     * Hands out colonization score and bonuses. The side with most tasks gets the
+     * score and the bonus it asked for last, the other side gets the other bonus if
+     * it completed at least one task. The task total is always odd, so there's no
+     * tie.
+     */
+    private void completePlanet(GameState state, int planet) {
+        int winner = state.contribution(GameState.ME, planet) > state.contribution(GameState.OPP, planet)
+                ? GameState.ME
+                : GameState.OPP;
+        int loser = 1 - winner;
+        set(state, COLONIZED, planet, 1);
+        set(state, POINTS, winner, state.colonizationPoints[winner] + state.colonizationScore[planet]);
+        int preferred = state.preference[winner * GameState.MAX_PLANETS + planet];
+        gain(state, winner, state.bonus(planet, preferred));
+        if (state.contribution(loser, planet) > 0) {
+            gain(state, loser, state.bonus(planet, 1 - preferred));
+        }
+
+        set(state, COLONIZED_IN_SECTOR, 0, state.colonizedInSector + 1);
+        if (state.colonizedInSector == GameState.PLANETS_TO_COLONIZE) {
+            // The remaining planet is abandoned and everyone moves on
+            for (int other = 0; other < state.planetCount; other++) {
+                if (!state.colonized[other]) {
+                    set(state, COLONIZED, other, 1);
+                }
+            }
+            set(state, SECTOR, 0, state.sectorIndex + 1);
+            set(state, COLONIZED_IN_SECTOR, 0, 0);
+        }
+    }
+
+    private void resupply(GameState state, int side) {
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            if (state.stationOwner[station] == side && !state.available[station]) {
+                set(state, AVAILABLE, station, 1);
+            }
+        }
+    }
+
+    private void consume(GameState state, int side, int bonus) {
+        int index = side * Bonus.COUNT + bonus;
+        set(state, INVENTORY, index, state.inventory[index] - 1);
+    }
+
+    private void gain(GameState state, int side, int bonus) {
+        int index = side * Bonus.COUNT + bonus;
+        set(state, INVENTORY, index, state.inventory[index] + 1);
+    }
+
+    /**
+     * The active side changes, which also drops an unused alien artifact.
+     */
+    private void endTurn(GameState state) {
+        if (state.artifact != GameState.NO_ARTIFACT) {
+            set(state, ARTIFACT, 0, GameState.NO_ARTIFACT);
+        }
+        set(state, ACTIVE_SIDE, 0, 1 - state.activeSide);
+        set(state, ROUND, 0, state.round + 1);
+    }
+
+    private void set(GameState state, int field, int index, int value) {
+        if (size + 2 > journal.length) {
+            journal = Arrays.copyOf(journal, journal.length * 2);
+        }
+        int previous = get(state, field, index);
+        journal[size++] = field << 16 | index;
+        journal[size++] = previous;
+        put(state, field, index, value);
+        state.hash ^= Zobrist.key(field, index, previous) ^ Zobrist.key(field, index, value);
+    }
+
+    private static int get(GameState state, int field, int index) {
+        switch (field) {
+            case AVAILABLE:
+                return state.available[index] ? 1 : 0;
+            case TECH:
+                return state.tech[index];
+            case TASKS:
+                return state.tasks[index];
+            case CONTRIBUTION:
+                return state.contribution[index];
+            case COLONIZED:
+                return state.colonized[index] ? 1 : 0;
+            case PREFERENCE:
+                return state.preference[index];
+            case INVENTORY:
+                return state.inventory[index];
+            case POINTS:
+                return state.colonizationPoints[index];
+            case ACTIVE_SIDE:
+                return state.activeSide;
+            case ARTIFACT:
+                return state.artifact;
+            case SECTOR:
+                return state.sectorIndex;
+            case COLONIZED_IN_SECTOR:
+                return state.colonizedInSector;
+            case ROUND:
+                return state.round;
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    private static void put(GameState state, int field, int index, int value) {
+        switch (field) {
+            case AVAILABLE:
+                state.available[index] = value != 0;
+                break;
+            case TECH:
+                state.tech[index] = value;
+                state.techCode[index / GameState.TECHS] = PriceTables.code(state.tech,
+                        index - index % GameState.TECHS);
+                state.techLanes[index / GameState.TECHS] = Lanes.pack(state.tech, index - index % GameState.TECHS);
+                break;
+            case TASKS: {
+                int planet = index / GameState.TECHS;
+                int delta = value - state.tasks[index];
+                state.tasks[index] = value;
+                state.taskCode[planet] = PriceTables.code(state.tasks, index - index % GameState.TECHS);
+                state.taskLanes[planet] = Lanes.pack(state.tasks, index - index % GameState.TECHS);
+                state.remaining[planet] += delta;
+                state.total[planet] += delta;
+                break;
+            }
+            case CONTRIBUTION:
+                state.total[index % GameState.MAX_PLANETS] += value - state.contribution[index];
+                state.contribution[index] = value;
+                break;
+            case COLONIZED:
+                state.colonized[index] = value != 0;
+                break;
+            case PREFERENCE:
+                state.preference[index] = value;
+                break;
+            case INVENTORY:
+                state.inventory[index] = value;
+                break;
+            case POINTS:
+                state.colonizationPoints[index] = value;
+                break;
+            case ACTIVE_SIDE:
+                state.activeSide = value;
+                break;
+            case ARTIFACT:
+                state.artifact = value;
+                break;
+            case SECTOR:
+                state.sectorIndex = value;
+                break;
+            case COLONIZED_IN_SECTOR:
+                state.colonizedInSector = value;
+                break;
+            case ROUND:
+                state.round = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+}
+
+/**
+ * SWAR arithmetic on a tech or task vector packed into one int, a byte lane per
+ * tech with tech 0 lowest. Lanes hold 0-127, so subtracting b from a with the
+ * high bit of every lane set never borrows across lanes, and the high bits left
+ * over say where a >= b. Min, sum and "every lane at least" of four values are
+ * then a few ALU operations on one register.
+ */
+class Lanes {
+    static final int HIGH = 0x80808080;
+    static final int LOW = 0x01010101;
+
+    /**
+     * The TECHS values starting at offset, each clamped to 0-127.
+     */
+    static int pack(int[] values, int offset) {
+        return clamp(values[offset]) | clamp(values[offset + 1]) << 8 | clamp(values[offset + 2]) << 16
+                | clamp(values[offset + 3]) << 24;
+    }
+
+    private static int clamp(int value) {
+        return Math.min(Math.max(value, 0), 127);
+    }
+
+    static int lane(int lanes, int i) {
+        return lanes >>> (8 * i) & 0xFF;
+    }
+
+    /**
+     * High bit set in every lane where a >= b, nothing else.
+     */
+    static int atLeast(int a, int b) {
+        return ((a | HIGH) - b) & HIGH;
+    }
+
+    static int min(int a, int b) {
+        int aLarger = (atLeast(a, b) >>> 7) * 0xFF;
+        return b & aLarger | a & ~aLarger;
+    }
+
+    /**
+     * Sum of the lanes, fine as long as it stays below 256.
+     */
+    static int sum(int lanes) {
+        return lanes * LOW >>> 24;
+    }
+
+    static boolean covers(int a, int b) {
+        return atLeast(a, b) == HIGH;
+    }
+}
+
+/**
+ * Lookup tables for the planet arithmetic that rating and search do over and
+ * over. Tech levels are 0-4 and a task count above 4 can't be covered by a single
+ * station, so a tech or task vector clamped to 0-4 fits a base 5 code below 625
+ * and the investable amount of every (tech, tasks) pair fits in one table.
+ * The lookup beats Lanes.min and Lanes.sum for it (see Benchmarks), the table is
+ * 390KB and stays in L2.
+ */
+class PriceTables {
+    static final int MAX_LEVEL = 4;
+    static final int CODES = 625; // 5^TECHS
+    static final int MAX_TOTAL = 64;
+
+    // min(tech, tasks) summed over the techs, [techCode * CODES + taskCode]
+    private static final byte[] INVESTABLE = new byte[CODES * CODES];
+    // tasks needed for the majority, by total tasks of the planet
+    private static final int[] MAJORITY = new int[MAX_TOTAL];
+
+    static {
+        for (int techs = 0; techs < CODES; techs++) {
+            for (int tasks = 0; tasks < CODES; tasks++) {
+                int sum = 0;
+                for (int t = techs, k = tasks, i = 0; i < GameState.TECHS; i++, t /= 5, k /= 5) {
+                    sum += Math.min(t % 5, k % 5);
+                }
+                INVESTABLE[techs * CODES + tasks] = (byte) sum;
+            }
+        }
+        for (int total = 0; total < MAX_TOTAL; total++) {
+            MAJORITY[total] = (total + 1) / 2;
+        }
+    }
+
+    /**
+     * Code of the TECHS values starting at offset, each clamped to MAX_LEVEL.
+     */
+    static int code(int[] values, int offset) {
+        int code = 0;
+        for (int i = GameState.TECHS - 1; i >= 0; i--) {
+            code = code * 5 + Math.min(Math.max(values[offset + i], 0), MAX_LEVEL);
+        }
+        return code;
+    }
+
+    static int investable(int techCode, int taskCode) {
+        return INVESTABLE[techCode * CODES + taskCode];
+    }
+
+    static int majority(int total) {
+        return total < MAX_TOTAL ? MAJORITY[total] : (total + 1) / 2;
+    }
+}
+
+/**
+ * 64 bit Zobrist keys for positions. A key is the XOR of one random number per
+ * (field, index, value) of the position: station availability and tech, planet
+ * tasks, contributions, bonus preferences and colonized flags, both inventories,
+ * colonization points, the active side, a pending alien artifact, the sector and
+ * the planets colonized in it. The round counter is left out, positions only
+ * differ by it near the 200 round limit.
+ *
+ * ForwardModel keeps GameState.hash up to date on every write, anything else
+ * that fills a state calls hash() once.
+ */
+class Zobrist {
+    // Values per field, larger values wrap around (they don't occur in a game)
+    private static final int[] RANGE = new int[ForwardModel.FIELDS];
+    private static final long[][] KEYS = new long[ForwardModel.FIELDS][];
+
+    static {
+        RANGE[ForwardModel.AVAILABLE] = 2;
+        RANGE[ForwardModel.TECH] = 16;
+        RANGE[ForwardModel.TASKS] = 16;
+        RANGE[ForwardModel.CONTRIBUTION] = 64;
+        RANGE[ForwardModel.COLONIZED] = 2;
+        RANGE[ForwardModel.PREFERENCE] = 2;
+        RANGE[ForwardModel.INVENTORY] = 16;
+        RANGE[ForwardModel.POINTS] = 256;
+        RANGE[ForwardModel.ACTIVE_SIDE] = 2;
+        RANGE[ForwardModel.ARTIFACT] = 32;
+        RANGE[ForwardModel.SECTOR] = 4;
+        RANGE[ForwardModel.COLONIZED_IN_SECTOR] = 8;
+        int[] indices = new int[ForwardModel.FIELDS];
+        indices[ForwardModel.AVAILABLE] = GameState.STATIONS;
+        indices[ForwardModel.TECH] = GameState.STATIONS * GameState.TECHS;
+        indices[ForwardModel.TASKS] = GameState.MAX_PLANETS * GameState.TECHS;
+        indices[ForwardModel.CONTRIBUTION] = 2 * GameState.MAX_PLANETS;
+        indices[ForwardModel.COLONIZED] = GameState.MAX_PLANETS;
+        indices[ForwardModel.PREFERENCE] = 2 * GameState.MAX_PLANETS;
+        indices[ForwardModel.INVENTORY] = 2 * Bonus.COUNT;
+        indices[ForwardModel.POINTS] = 2;
+        indices[ForwardModel.ACTIVE_SIDE] = 1;
+        indices[ForwardModel.ARTIFACT] = 1;
+        indices[ForwardModel.SECTOR] = 1;
+        indices[ForwardModel.COLONIZED_IN_SECTOR] = 1;
+        // Fixed seed, keys have to be the same in every run to compare hashes
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int field = 0; field < ForwardModel.FIELDS; field++) {
+            KEYS[field] = new long[indices[field] * RANGE[field]];
+            for (int i = 0; i < KEYS[field].length; i++) {
+                seed += 0x9E3779B97F4A7C15L;
+                KEYS[field][i] = mix(seed);
+            }
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    static long key(int field, int index, int value) {
+        int range = RANGE[field];
+        if (range == 0) {
+            return 0;
+        }
+        if (field == ForwardModel.ARTIFACT) {
+            value++; // NO_ARTIFACT is -1
+        }
+        return KEYS[field][index * range + (value & (range - 1))];
+    }
+
+    /**
+     * Hash of the whole position, from scratch. The closed planet slots count too,
+     * so everything that loads a turn input goes through GameState.resetHidden to
+     * clear them first.
+     */
+    static long hash(GameState state) {
+        long hash = 0;
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            hash ^= key(ForwardModel.AVAILABLE, station, state.available[station] ? 1 : 0);
+        }
+        for (int i = 0; i < state.tech.length; i++) {
+            hash ^= key(ForwardModel.TECH, i, state.tech[i]);
+        }
+        for (int i = 0; i < state.tasks.length; i++) {
+            hash ^= key(ForwardModel.TASKS, i, state.tasks[i]);
+        }
+        for (int i = 0; i < state.contribution.length; i++) {
+            hash ^= key(ForwardModel.CONTRIBUTION, i, state.contribution[i]);
+            hash ^= key(ForwardModel.PREFERENCE, i, state.preference[i]);
+        }
+        for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+            hash ^= key(ForwardModel.COLONIZED, planet, state.colonized[planet] ? 1 : 0);
+        }
+        for (int i = 0; i < state.inventory.length; i++) {
+            hash ^= key(ForwardModel.INVENTORY, i, state.inventory[i]);
+        }
+        hash ^= key(ForwardModel.POINTS, GameState.ME, state.colonizationPoints[GameState.ME]);
+        hash ^= key(ForwardModel.POINTS, GameState.OPP, state.colonizationPoints[GameState.OPP]);
+        hash ^= key(ForwardModel.ACTIVE_SIDE, 0, state.activeSide);
+        hash ^= key(ForwardModel.ARTIFACT, 0, state.artifact);
+        hash ^= key(ForwardModel.SECTOR, 0, state.sectorIndex);
+        hash ^= key(ForwardModel.COLONIZED_IN_SECTOR, 0, state.colonizedInSector);
+        return hash;
+    }
+}
+
+/**
+ * Fixed-size transposition table in a long array that several search threads can
+ * share without locks. Every index is a bucket of two entries, one kept by depth
+ * (replaced by deeper or equal searches, or entries of an older search) and one
+ * always replaced. An entry is two longs, key ^ data and data, so a torn write
+ * from another thread shows up as a key mismatch and is treated as a miss
+ * ("lockless hashing").
+ *
+ * Data layout: value (32 bits), move (16), depth (8), bound (2), age (5) and a
+ * used bit, so an empty slot never matches.
+ */
+class TranspositionTable {
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+    static final long MISS = 0;
+
+    private static final long USED = 1L << 63;
+
+    private final long[] table;
+    private final int bucketMask;
+    private int age;
+
+    final LongAdder probes = new LongAdder();
+    final LongAdder hits = new LongAdder();
+    final LongAdder stores = new LongAdder();
+
+    /**
+     * @param bits log2 of the number of buckets
+     */
+    TranspositionTable(int bits) {
+        table = new long[(1 << bits) * 4];
+        bucketMask = (1 << bits) - 1;
+    }
+
+    /**
+     * @return the entry data for key, MISS if there's none
+     */
+    long probe(long key) {
+        probes.increment();
+        int base = ((int) key & bucketMask) * 4;
+        for (int entry = base; entry < base + 4; entry += 2) {
+            long data = table[entry + 1];
+            if ((table[entry] ^ data) == key && (data & USED) != 0) {
+                hits.increment();
+                return data;
+            }
+        }
+        return MISS;
+    }
+
+    void store(long key, int value, int move, int depth, int bound) {
+        stores.increment();
+        long data = USED | (long) (age & 31) << 58 | (long) (bound & 3) << 56 | (long) (depth & 0xFF) << 48
+                | (long) (move & 0xFFFF) << 32 | (value & 0xFFFFFFFFL);
+        int base = ((int) key & bucketMask) * 4;
+        long kept = table[base + 1];
+        boolean sameKey = (table[base] ^ kept) == key;
+        if (sameKey || (kept & USED) == 0 || depth >= depth(kept) || age(kept) != (age & 31)) {
+            table[base + 1] = data;
+            table[base] = key ^ data;
+        } else {
+            table[base + 3] = data;
+            table[base + 2] = key ^ data;
+        }
+    }
+
+    /**
+     * Marks following stores as a new search, older entries become replaceable.
+     */
+    void newSearch() {
+        age++;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0);
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    double hitRate() {
+        long probed = probes.sum();
+        return probed == 0 ? 0 : hits.sum() / (double) probed;
+    }
+
+    static int value(long data) {
+        return (int) data;
+    }
+
+    static int move(long data) {
+        int move = (int) (data >>> 32) & 0xFFFF;
+        return move == 0xFFFF ? Move.NONE : move;
+    }
+
+    static int depth(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    static int bound(long data) {
+        return (int) (data >>> 56) & 3;
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> 58) & 31;
+    }
+}
+
+/**
+ * The numbers behind the greedy decisions in ratePair and bonusIndex, as one
+ * vector so they can be tuned (see Tuner) and passed in as weights=v1,v2,...
+ * DEFAULTS are the hand-picked values.
+ */
+class Weights {
+    static final int SACK = 0; // colonizing a planet in one move
+    static final int SACK_PLANET_SCORE = 1; // per colonization point of that planet
+    static final int SACK_POINTS_BONUS = 2; // per point of its first POINTS bonus
+    static final int INVESTABLE = 3; // per task invested in a planet we can still win
+    static final int LOST_FIRST = 4; // first tasks in a planet we can't win, for the bonus
+    static final int LOST_INVESTED = 5; // more tasks in a planet we can't win
+    static final int BONUS = 6; // bonusIndex value of each bonus type, Bonus.COUNT entries
+    static final int COUNT = BONUS + Bonus.COUNT;
+
+    static final double[] DEFAULTS = {
+            100, 1, 1, 1, 1, 0,
+            0, 0, 0, 0, 0, 1, 2, 3,
+    };
+    // Typical size of a meaningful change per weight, tuning steps are relative to it
+    static final double[] SCALES = {
+            20, 1, 1, 0.5, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+    };
+
+    static double[] parse(String text) {
+        String[] parts = text.split(",");
+        if (parts.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights, got " + parts.length);
+        }
+        double[] weights = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            weights[i] = Double.parseDouble(parts[i]);
+        }
+        return weights;
+    }
+
+    /**
+     * Exact, parse gives back the same doubles. The tuner's steps can be smaller
+     * than any fixed number of decimals.
+     */
+    static String format(double[] weights) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < weights.length; i++) {
+            text.append(i == 0 ? "" : ",").append(weights[i]);
+        }
+        return text.toString();
+    }
+}
+
+/**
+ * Startup options, given as key=value program arguments, e.g.
+ * `java Player mode=mcts turnMs=40`. Without arguments we play the greedy bot.
+ * Unknown options and values that don't parse are reported on stderr and
+ * skipped, the bot still starts with the defaults for them. Arguments without
+ * '=' are ignored.
+ */
+class BotConfig {
+    static final int GREEDY = 0;
+    static final int MCTS = 1;
+    static final int PLAN = 2;
+
+    int mode = GREEDY;
+    // Response time is 50ms per turn and 1000ms for the first one, keep some slack
+    int turnMillis = 40;
+    int firstTurnMillis = 900;
+    long seed = 0x2545F4914F6CDD1DL;
+    // Per turn latency/allocation lines on stderr, log output included, and JFR
+    // events on top
+    boolean stats = true;
+    boolean jfr = false;
+    // What the log prints as it goes, see DebugLog. Everything is still kept for the
+    // dump at the end of the game or after an exception
+    int logLevel = DebugLog.INFO;
+    // Keep searching during the opponent's turn (MCTS only)
+    boolean ponder = false;
+    // Carry the search tree over to the next turn (MCTS only)
+    boolean reuse = true;
+    // Search threads (MCTS only), more than one runs ParallelSearch, which neither
+    // ponders nor reuses its trees
+    int threads = 1;
+    // Play game after game from the same input, each ended by a GAME_OVER line
+    // (Player.GAME_OVER), for ProcessArena
+    boolean multiGame = false;
+    // Part of the first turn spent on synthetic turns to get the JIT going, 0 = off
+    int warmupMillis = 0;
+    // Greedy evaluation weights, see Weights
+    double[] weights = Weights.DEFAULTS;
+    // Solve the last sector exactly once it's small enough, see EndgameSolver
+    boolean endgame = false;
+
+    static BotConfig parse(String... args) {
+        BotConfig config = new BotConfig();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                continue;
+            }
+            String value = arg.substring(split + 1);
+            try {
+                switch (arg.substring(0, split)) {
+                    case "mode":
+                        config.mode = value.equals("mcts") ? MCTS : value.equals("plan") ? PLAN : GREEDY;
+                        break;
+                    case "turnMs":
+                        config.turnMillis = Integer.parseInt(value);
+                        break;
+                    case "firstTurnMs":
+                        config.firstTurnMillis = Integer.parseInt(value);
+                        break;
+                    case "seed":
+                        config.seed = Long.parseLong(value);
+                        break;
+                    case "stats":
+                        config.stats = value.equals("on");
+                        break;
+                    case "jfr":
+                        config.jfr = value.equals("on");
+                        break;
+                    case "log":
+                        config.logLevel = DebugLog.level(value);
+                        break;
+                    case "ponder":
+                        config.ponder = value.equals("on");
+                        break;
+                    case "reuse":
+                        config.reuse = value.equals("on");
+                        break;
+                    case "multiGame":
+                        config.multiGame = value.equals("on");
+                        break;
+                    case "threads":
+                        config.threads = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "warmupMs":
+                        config.warmupMillis = Integer.parseInt(value);
+                        break;
+                    case "weights":
+                        config.weights = Weights.parse(value);
+                        break;
+                    case "endgame":
+                        config.endgame = value.equals("on");
+                        break;
+                    default:
+                        System.err.println("Ignoring unknown option " + arg);
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException too, the default stays
+                System.err.println("Ignoring option " + arg + ": " + e.getMessage());
+            }
+        }
+        return config;
+    }
+}
+
+/**
+ * Plans a whole turn: up to MAX_BONUS_ACTIONS bonus actions, which keep the turn,
+ * followed by one main action. Beam search over the forward model, each level
+ * extends the best BEAM_WIDTH chains by one more bonus action. Chains that reach
+ * the same position in another order are merged by hash. Every chain is also
+ * finished with each main action and the end position scored, the best of those
+ * is the plan. Stops at the deadline with the best chain found so far.
+ */
+class ChainPlanner {
+    static final int MAX_BONUS_ACTIONS = 4;
+    static final int MAX_CHAIN = MAX_BONUS_ACTIONS + 1;
+    static final int BEAM_WIDTH = 32;
+    static final int SEEN_SIZE = 1 << 12;
+
+    // Evaluation weights, in points
+    static final double OBJECTIVE_PROGRESS = 0.25;
+    static final double AVAILABLE_STATION = 0.1;
+    static final double HELD_BONUS = 0.5;
+
+    private final GameState state = new GameState();
+    private final GameState scratch = new GameState();
+    private final ForwardModel model = new ForwardModel();
+    private final int[] moves = new int[512];
+
+    // The plan and the input hash expected before each of its steps
+    final int[] plan = new int[MAX_CHAIN];
+    final long[] expected = new long[MAX_CHAIN];
+    int planLength;
+    int scored;
+
+    // Chains of the current and the next level, MAX_CHAIN moves each
+    private int[] beam = new int[BEAM_WIDTH * MAX_CHAIN];
+    private int[] nextBeam = new int[BEAM_WIDTH * MAX_CHAIN];
+    private final double[] nextValue = new double[BEAM_WIDTH];
+    // Open addressing set of position hashes reached by a bonus chain
+    private final long[] seen = new long[SEEN_SIZE];
+
+    /**
+     * Plans the turn of ME from root until deadline (System.nanoTime).
+     */
+    void plan(GameState root, long deadline) {
+        state.copyFrom(root);
+        model.commit();
+        Arrays.fill(seen, 0);
+        plan[0] = Move.RESUPPLY;
+        planLength = 1;
+        scored = 0;
+        double best = Double.NEGATIVE_INFINITY;
+        int beamSize = 1;
+        search:
+        for (int level = 0; level <= MAX_BONUS_ACTIONS; level++) {
+            int nextSize = 0;
+            for (int entry = 0; entry < beamSize; entry++) {
+                int chain = entry * MAX_CHAIN;
+                int mark = model.mark();
+                for (int i = 0; i < level; i++) {
+                    model.apply(state, beam[chain + i]);
+                }
+                int count = model.generate(state, moves);
+                for (int m = 0; m < count; m++) {
+                    if (System.nanoTime() > deadline) {
+                        model.undo(state, mark);
+                        break search;
+                    }
+                    int move = moves[m];
+                    int before = model.mark();
+                    model.apply(state, move);
+                    if (Move.isMainAction(move)) {
+                        double value = evaluate(state);
+                        scored++;
+                        if (value > best) {
+                            best = value;
+                            System.arraycopy(beam, chain, plan, 0, level);
+                            plan[level] = move;
+                            planLength = level + 1;
+                        }
+                    } else if (level < MAX_BONUS_ACTIONS && firstVisit(state.hash)) {
+                        double value = evaluate(state);
+                        scored++;
+                        int slot = -1;
+                        if (nextSize < BEAM_WIDTH) {
+                            slot = nextSize++;
+                        } else if (value > nextValue[worst(nextSize)]) {
+                            slot = worst(nextSize);
+                        }
+                        if (slot >= 0) {
+                            System.arraycopy(beam, chain, nextBeam, slot * MAX_CHAIN, level);
+                            nextBeam[slot * MAX_CHAIN + level] = move;
+                            nextValue[slot] = value;
+                        }
+                    }
+                    model.undo(state, before);
+                }
+                model.undo(state, mark);
+            }
+            int[] swap = beam;
+            beam = nextBeam;
+            nextBeam = swap;
+            beamSize = nextSize;
+            if (beamSize == 0) {
+                break;
+            }
+        }
+        expectInputs(root);
+    }
+
+    // Slot of the lowest valued chain of the next level
+    private int worst(int size) {
+        int worst = 0;
+        for (int i = 1; i < size; i++) {
+            if (nextValue[i] < nextValue[worst]) {
+                worst = i;
+            }
+        }
+        return worst;
+    }
+
+    private boolean firstVisit(long hash) {
+        long key = hash == 0 ? 1 : hash;
+        int slot = (int) key & (SEEN_SIZE - 1);
+        while (seen[slot] != 0) {
+            if (seen[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & (SEEN_SIZE - 1);
+        }
+        seen[slot] = key;
+        return true;
+    }
+
+    // Hash of the turn input that should come in before each step of the plan
+    private void expectInputs(GameState root) {
+        scratch.copyFrom(root);
+        expected[0] = root.hash;
+        for (int i = 1; i < planLength; i++) {
+            model.apply(scratch, plan[i - 1]);
+            state.copyFrom(scratch);
+            state.toTurnInput();
+            expected[i] = state.hash;
+        }
+        model.commit();
+    }
+
+    /**
+     * Score margin of the position plus partial credit for planets, objectives,
+     * ready stations and held bonuses.
+     */
+    static double evaluate(GameState state) {
+        double value = state.score(GameState.ME) - state.score(GameState.OPP);
+        for (int planet = 0; planet < state.planetCount; planet++) {
+            if (state.colonized[planet]) {
+                continue;
+            }
+            int majority = state.majority(planet);
+            int mine = state.contribution(GameState.ME, planet);
+            int theirs = state.contribution(GameState.OPP, planet);
+            int score = state.colonizationScore[planet];
+            if (mine >= majority) {
+                value += score;
+            } else if (theirs >= majority) {
+                value -= score;
+            } else {
+                value += (mine - theirs) * score / (double) majority;
+            }
+        }
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            double sign = state.stationOwner[station] == GameState.ME ? 1 : -1;
+            if (state.available[station]) {
+                value += sign * AVAILABLE_STATION;
+            }
+            if (state.objectiveReached(station)) {
+                continue;
+            }
+            int reached = 0;
+            int needed = 0;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                reached += Math.min(state.tech(station, i), state.objective(station, i));
+                needed += state.objective(station, i);
+            }
+            value += sign * OBJECTIVE_PROGRESS * state.objectiveScore[station] * reached / Math.max(needed, 1);
+        }
+        for (int bonus = Bonus.ENERGY_CORE; bonus <= Bonus.TECH_RESEARCH_4; bonus++) {
+            value += HELD_BONUS * (state.held(GameState.ME, bonus) - state.held(GameState.OPP, bonus));
+        }
+        return value;
+    }
+}
+
+/**
+ * Exact search for the last sector. No new planets come after it, so the rest of
+ * the game is known and alpha-beta over the forward model can solve it for the
+ * final score margin. Iterative deepening in plies (bonus actions count), with
+ * the transposition table for move ordering and for positions already solved.
+ * A line ends when the game does, or on the second pass in a row (RESUPPLY with
+ * every own station ready): that repeats the position from two plies before,
+ * and if nobody does anything else the score stays as it is until the round
+ * limit. Passes are the only way back to a position, so with "after a pass" as
+ * part of the key the positions form a DAG and table values don't depend on the
+ * line they were found on. The root counts as not after a pass.
+ *
+ * A value is proven when no line below it was cut off by the depth limit, those
+ * are stored with depth PROVEN and trusted at any depth later on. Positions under
+ * the depth limit are scored with secured planet majorities on top of the score,
+ * that's only used when time runs out before the proof.
+ *
+ * The hidden bonus preferences are taken as the input gives them (0), so the
+ * proof is about what the input tells us.
+ */
+class EndgameSolver {
+    // Solve when the root has at most this many moves and the tasks left on open
+    // planets keep the game clear of the round limit
+    static final int MAX_BRANCHING = 40;
+    static final int MAX_DEPTH = 96;
+    static final int PROVEN = 255;
+    static final int TABLE_BITS = 18;
+
+    private final GameState state = new GameState();
+    private final ForwardModel model = new ForwardModel();
+    private final TranspositionTable table = new TranspositionTable(TABLE_BITS);
+    private final int[] moves = new int[MAX_DEPTH * 512];
+    private final int[] order = new int[512];
+    // Table key of a position reached by a pass
+    private static final long AFTER_PASS = 0x5DEECE66DL * 0x9E3779B97F4A7C15L;
+    private long deadline;
+    private boolean aborted;
+    // Set when a value below the current node came from the depth limit
+    private boolean horizon;
+
+    // Result of the last solve
+    int bestMove;
+    int value;
+    int depth;
+    boolean proven;
+    long nodes;
+    long elapsedNanos;
+
+    /**
+     * @param round upper bound of the rounds played so far, the input doesn't
+     *              tell
+     * @return true if the position is small enough to solve
+     */
+    boolean applies(GameState root, int round) {
+        if (root.sectorIndex != GameState.SECTORS - 1 || root.isOver()) {
+            return false;
+        }
+        // Every main action but a repetition completes a task, and at most two
+        // RESUPPLY in a row don't repeat a position
+        int tasks = 0;
+        for (int planet = 0; planet < root.planetCount; planet++) {
+            if (!root.colonized[planet]) {
+                tasks += root.remainingPrice(planet);
+            }
+        }
+        if (round + 3 * (tasks + 1) >= GameState.MAX_ROUNDS) {
+            return false;
+        }
+        return model.generate(root, order) <= MAX_BRANCHING;
+    }
+
+    /**
+     * Searches root until it's proven or deadline (System.nanoTime) passes.
+     *
+     * @return the best move of the deepest finished iteration
+     */
+    int solve(GameState root, long deadline) {
+        long start = System.nanoTime();
+        state.copyFrom(root);
+        model.commit();
+        table.newSearch();
+        this.deadline = deadline;
+        aborted = false;
+        nodes = 0;
+        bestMove = Move.RESUPPLY;
+        value = margin(state);
+        depth = 0;
+        proven = false;
+        for (int limit = 1; limit <= MAX_DEPTH && !proven; limit++) {
+            horizon = false;
+            int result = search(limit, Integer.MIN_VALUE + 1, Integer.MAX_VALUE, 0, false);
+            if (aborted) {
+                break;
+            }
+            long data = table.probe(state.hash);
+            if (data != TranspositionTable.MISS && TranspositionTable.move(data) != Move.NONE) {
+                bestMove = TranspositionTable.move(data);
+            }
+            value = result;
+            depth = limit;
+            proven = !horizon;
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return bestMove;
+    }
+
+    // Alpha-beta, values are score margins from our side whoever is to move
+    private int search(int depth, int alpha, int beta, int ply, boolean afterPass) {
+        nodes++;
+        if ((nodes & 1023) == 0 && System.nanoTime() > deadline) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (state.isOver()) {
+            return margin(state);
+        }
+        long hash = afterPass ? state.hash ^ AFTER_PASS : state.hash;
+        if (depth == 0 || ply == MAX_DEPTH) {
+            horizon = true;
+            return estimate(state);
+        }
+        int hashMove = Move.NONE;
+        long data = table.probe(hash);
+        if (data != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.move(data);
+            int stored = TranspositionTable.depth(data);
+            if (stored >= depth) {
+                int storedValue = TranspositionTable.value(data);
+                int bound = TranspositionTable.bound(data);
+                if (bound == TranspositionTable.EXACT || bound == TranspositionTable.LOWER && storedValue >= beta
+                        || bound == TranspositionTable.UPPER && storedValue <= alpha) {
+                    if (stored != PROVEN) {
+                        horizon = true;
+                    }
+                    return storedValue;
+                }
+            }
+        }
+        int base = ply * 512;
+        int count = orderMoves(base, hashMove);
+        boolean maximizing = state.activeSide == GameState.ME;
+        boolean outerHorizon = horizon;
+        horizon = false;
+        int alphaBefore = alpha;
+        int betaBefore = beta;
+        int best = maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int bestMove = Move.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[base + i];
+            boolean pass = move == Move.RESUPPLY && allReady(state);
+            int result;
+            if (pass && afterPass) {
+                result = margin(state);
+            } else {
+                int mark = model.mark();
+                model.apply(state, move);
+                result = search(depth - 1, alpha, beta, ply + 1, pass);
+                model.undo(state, mark);
+                if (aborted) {
+                    return 0;
+                }
+            }
+            if (maximizing ? result > best : result < best) {
+                best = result;
+                bestMove = move;
+            }
+            if (maximizing) {
+                alpha = Math.max(alpha, result);
+            } else {
+                beta = Math.min(beta, result);
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        int bound = best <= alphaBefore ? TranspositionTable.UPPER
+                : best >= betaBefore ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(hash, best, bestMove, horizon ? depth : PROVEN, bound);
+        horizon |= outerHorizon;
+        return best;
+    }
+
+    // Generates the moves of ply at base, the hash move first, then COLONIZE by
+    // tasks done (completing a planet first), bonus actions and RESUPPLY last
+    private int orderMoves(int base, int hashMove) {
+        int count = model.generate(state, order);
+        for (int i = 0; i < count; i++) {
+            int move = order[i];
+            int key;
+            if (move == hashMove) {
+                key = 1000;
+            } else if (Move.type(move) == Move.COLONIZE) {
+                int planet = Move.second(move);
+                int done = ForwardModel.completedTasks(state, Move.first(move), planet);
+                key = 100 + done + (done == state.remainingPrice(planet) ? 50 : 0);
+            } else if (Move.type(move) == Move.RESUPPLY) {
+                key = 0;
+            } else {
+                key = 10;
+            }
+            // Insertion sort on key << 16 | move, highest first
+            int entry = key << 16 | move;
+            int j = i - 1;
+            while (j >= 0 && moves[base + j] < entry) {
+                moves[base + j + 1] = moves[base + j];
+                j--;
+            }
+            moves[base + j + 1] = entry;
+        }
+        for (int i = 0; i < count; i++) {
+            moves[base + i] &= 0xFFFF;
+        }
+        return count;
+    }
+
+    private static boolean allReady(GameState state) {
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            if (state.stationOwner[station] == state.activeSide && !state.available[station]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Final score margin if the game ended here.
+     */
+    static int margin(GameState state) {
+        return state.score(GameState.ME) - state.score(GameState.OPP);
+    }
+
+    // Margin counting planets a side already holds the majority of as theirs
+    private static int estimate(GameState state) {
+        int margin = margin(state);
+        for (int planet = 0; planet < state.planetCount; planet++) {
+            if (state.colonized[planet]) {
+                continue;
+            }
+            int majority = state.majority(planet);
+            if (state.contribution(GameState.ME, planet) >= majority) {
+                margin += state.colonizationScore[planet];
+            } else if (state.contribution(GameState.OPP, planet) >= majority) {
+                margin -= state.colonizationScore[planet];
+            }
+        }
+        return margin;
+    }
+
+    double hitRate() {
+        return table.hitRate();
+    }
+}
+
+/**
+ * Anytime Monte Carlo Tree Search over the forward model. Runs playouts (UCT
+ * selection, expansion of all moves at once, a cheap colonize-first rollout)
+ * until the deadline and picks the most visited root move. Both sides are
+ * searched, so the opponent's replies are part of the tree.
+ *
+ * The tree lives in preallocated parallel arrays. When the next turn's input is
+ * a position in the tree (our move plus the opponent's replies), that subtree
+ * becomes the new root and the rest is dropped, otherwise it's cleared. New
+ * planets after a sector ends are unknown, so playouts stop there and are scored
+ * by the evaluation.
+ */
+class MonteCarloSearch {
+    static final double EXPLORATION = 0.7;
+    static final int MAX_ROLLOUT_DEPTH = 40;
+    // Bonus actions plus a main action the opponent may chain in one turn, for reuse
+    static final int MAX_REPLY_DEPTH = 6;
+    // Score margin that maps to ~73% win chance in the reward
+    static final double REWARD_SCALE = 5.0;
+    // A reward of 1 in mergeRoot()'s fixed point values
+    static final long VALUE_ONE = 1L << 24;
+
+    final GameState state = new GameState();
+    final ForwardModel model = new ForwardModel();
+    private final int capacity;
+
+    // Tree nodes: the move leading to the node, the side that played it, its
+    // children (-1 while not expanded) and statistics from the mover's view
+    private int[] move;
+    private int[] mover;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] childCount;
+    private int[] visits;
+    private double[] value;
+    private int nodeCount;
+    // Second set of node arrays that promote() copies a subtree into, allocated
+    // the first time a tree is reused
+    private int[] spareMove;
+    private int[] spareMover;
+    private int[] spareParent;
+    private int[] spareFirstChild;
+    private int[] spareChildCount;
+    private int[] spareVisits;
+    private double[] spareValue;
+    private int[] source;
+    private final GameState scratch = new GameState();
+
+    private final int[] path = new int[256];
+    private final int[] moves = new int[512];
+    private long random;
+
+    // Statistics of the last search, for reporting
+    long playouts;
+    long elapsedNanos;
+    long ponderPlayouts;
+    int reusedNodes;
+    // Set by another thread to end ponder()
+    volatile boolean stopRequested;
+
+    MonteCarloSearch(long seed) {
+        this(seed, 1 << 19);
+    }
+
+    MonteCarloSearch(long seed, int capacity) {
+        this.capacity = capacity;
+        this.random = seed == 0 ? 1 : seed;
+        move = new int[capacity];
+        mover = new int[capacity];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        visits = new int[capacity];
+        value = new double[capacity];
+    }
+
+    /**
+     * Searches from root until deadline (System.nanoTime) and returns the most
+     * visited move of the side to play.
+     */
+    int search(GameState root, long deadline) {
+        start(root);
+        run(deadline);
+        return bestMove();
+    }
+
+    /**
+     * Clears the tree and sets it up for root.
+     */
+    void start(GameState root) {
+        state.copyFrom(root);
+        model.commit();
+        nodeCount = 0;
+        newNode(Move.NONE, GameState.OPP, -1);
+        ponderPlayouts = 0;
+        reusedNodes = 0;
+    }
+
+    /**
+     * Grows the current tree until deadline.
+     */
+    void run(long deadline) {
+        long start = System.nanoTime();
+        playouts = 0;
+        do {
+            // Checking the clock every few playouts is plenty
+            for (int i = 0; i < 16; i++) {
+                playout();
+            }
+            playouts += 16;
+        } while (System.nanoTime() < deadline);
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Grows the current tree until another thread sets stopRequested.
+     */
+    void ponder() {
+        while (!stopRequested) {
+            for (int i = 0; i < 16; i++) {
+                playout();
+            }
+            ponderPlayouts += 16;
+        }
+    }
+
+    /**
+     * Plays first from the root and then the most visited replies until the root's
+     * side is to move again, and writes the result into predicted as turn input.
+     *
+     * @return false if the tree doesn't reach that far, or the sector or game ends
+     *         on the way (the next planets are unknown)
+     */
+    boolean predict(int first, GameState predicted) {
+        int node = child(0, first);
+        if (node < 0) {
+            return false;
+        }
+        predicted.copyFrom(state);
+        model.apply(predicted, first);
+        while (predicted.activeSide != state.activeSide && !predicted.isOver()
+                && predicted.sectorIndex == state.sectorIndex && childCount[node] > 0) {
+            node = mostVisitedChild(node);
+            model.apply(predicted, move[node]);
+        }
+        model.commit();
+        if (predicted.activeSide != state.activeSide || predicted.isOver()
+                || predicted.sectorIndex != state.sectorIndex) {
+            return false;
+        }
+        predicted.toTurnInput();
+        return true;
+    }
+
+    /**
+     * Moves the root to the node that our move played from the root, followed by
+     * the opponent's replies, leads to when that's the observed position. The
+     * subtree below it is kept and the rest of the tree dropped.
+     *
+     * @return false if the tree doesn't hold the observed position, the tree is
+     *         left as it was
+     */
+    boolean reuse(int played, GameState observed) {
+        int node = child(0, played);
+        if (node < 0) {
+            return false;
+        }
+        int side = state.activeSide;
+        int sector = state.sectorIndex;
+        int mark = model.mark();
+        model.apply(state, played);
+        int found = find(node, observed, side, sector, 0);
+        if (found < 0) {
+            model.undo(state, mark);
+            return false;
+        }
+        // The state stays in the tree's slot layout, colonized planets aren't
+        // compacted away like in the input
+        model.commit();
+        state.round = observed.round;
+        promote(found);
+        reusedNodes = nodeCount;
+        return true;
+    }
+
+    // Depth first over the opponent's moves below node, the state is at node.
+    // Leaves the state at the matching node.
+    private int find(int node, GameState observed, int side, int sector, int depth) {
+        if (state.isOver() || state.sectorIndex != sector) {
+            return -1;
+        }
+        if (state.activeSide == side) {
+            scratch.copyFrom(state);
+            scratch.toTurnInput();
+            return scratch.hash == observed.hash ? node : -1;
+        }
+        if (depth == MAX_REPLY_DEPTH || childCount[node] <= 0) {
+            return -1;
+        }
+        for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+            int mark = model.mark();
+            model.apply(state, move[child]);
+            int found = find(child, observed, side, sector, depth + 1);
+            if (found >= 0) {
+                return found;
+            }
+            model.undo(state, mark);
+        }
+        return -1;
+    }
+
+    // Copies the subtree of root breadth first into the spare arrays, so children
+    // stay next to each other, and swaps the arrays
+    private void promote(int root) {
+        if (spareMove == null) {
+            spareMove = new int[capacity];
+            spareMover = new int[capacity];
+            spareParent = new int[capacity];
+            spareFirstChild = new int[capacity];
+            spareChildCount = new int[capacity];
+            spareVisits = new int[capacity];
+            spareValue = new double[capacity];
+            source = new int[capacity];
+        }
+        int count = 1;
+        source[0] = root;
+        spareParent[0] = -1;
+        for (int node = 0; node < count; node++) {
+            int old = source[node];
+            spareMove[node] = move[old];
+            spareMover[node] = mover[old];
+            spareVisits[node] = visits[old];
+            spareValue[node] = value[old];
+            spareChildCount[node] = childCount[old];
+            spareFirstChild[node] = -1;
+            if (childCount[old] > 0) {
+                spareFirstChild[node] = count;
+                for (int i = 0; i < childCount[old]; i++) {
+                    source[count] = firstChild[old] + i;
+                    spareParent[count] = node;
+                    count++;
+                }
+            }
+        }
+        int[] swap = move;
+        move = spareMove;
+        spareMove = swap;
+        swap = mover;
+        mover = spareMover;
+        spareMover = swap;
+        swap = parent;
+        parent = spareParent;
+        spareParent = swap;
+        swap = firstChild;
+        firstChild = spareFirstChild;
+        spareFirstChild = swap;
+        swap = childCount;
+        childCount = spareChildCount;
+        spareChildCount = swap;
+        swap = visits;
+        visits = spareVisits;
+        spareVisits = swap;
+        double[] swapValue = value;
+        value = spareValue;
+        spareValue = swapValue;
+        nodeCount = count;
+    }
+
+    private int child(int node, int childMove) {
+        for (int i = 0; i < childCount[node]; i++) {
+            if (move[firstChild[node] + i] == childMove) {
+                return firstChild[node] + i;
+            }
+        }
+        return -1;
+    }
+
+    private int mostVisitedChild(int node) {
+        int best = firstChild[node];
+        for (int child = best + 1; child < firstChild[node] + childCount[node]; child++) {
+            if (visits[child] > visits[best]) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    int bestMove() {
+        return childCount[0] > 0 ? move[mostVisitedChild(0)] : Move.RESUPPLY;
+    }
+
+    /**
+     * Adds the visits and value (as VALUE_ONE fixed point) of the root's children
+     * to the slots of the same moves in rootMoves.
+     */
+    void mergeRoot(int[] rootMoves, int rootCount, AtomicLongArray visitCounts, AtomicLongArray valueSums) {
+        for (int i = 0; i < Math.max(childCount[0], 0); i++) {
+            int child = firstChild[0] + i;
+            // Same generator, so the same order, unless the root was never expanded
+            int slot = i < rootCount && rootMoves[i] == move[child] ? i : -1;
+            for (int j = 0; slot < 0 && j < rootCount; j++) {
+                slot = rootMoves[j] == move[child] ? j : -1;
+            }
+            if (slot >= 0) {
+                visitCounts.addAndGet(slot, visits[child]);
+                valueSums.addAndGet(slot, (long) (value[child] * VALUE_ONE));
+            }
+        }
+    }
+
+    private void playout() {
+        int mark = model.mark();
+        int node = 0;
+        int depth = 0;
+        path[depth++] = node;
+        // Selection
+        while (childCount[node] > 0) {
+            node = select(node);
+            model.apply(state, move[node]);
+            path[depth++] = node;
+        }
+        // Expansion
+        if (childCount[node] < 0 && !isTerminal(state) && expand(node)) {
+            node = firstChild[node] + nextInt(childCount[node]);
+            model.apply(state, move[node]);
+            path[depth++] = node;
+        }
+        // Rollout
+        for (int i = 0; i < MAX_ROLLOUT_DEPTH && !isTerminal(state); i++) {
+            model.apply(state, rolloutMove());
+        }
+        double reward = evaluate(state);
+        // Backpropagation, each node keeps the value for the side that moved into it
+        for (int i = 0; i < depth; i++) {
+            int n = path[i];
+            visits[n]++;
+            value[n] += mover[n] == GameState.ME ? reward : 1 - reward;
+        }
+        model.undo(state, mark);
+    }
+
+    private int select(int node) {
+        int first = firstChild[node];
+        int count = childCount[node];
+        double logVisits = Math.log(visits[node]);
+        int best = first;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + count; child++) {
+            if (visits[child] == 0) {
+                return child;
+            }
+            double score = value[child] / visits[child]
+                    + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private boolean expand(int node) {
+        int count = model.generate(state, moves);
+        if (nodeCount + count > capacity) {
+            // Tree is full, keep playing out from the leaf
+            return false;
+        }
+        firstChild[node] = nodeCount;
+        childCount[node] = count;
+        for (int i = 0; i < count; i++) {
+            newNode(moves[i], state.activeSide, node);
+        }
+        return true;
+    }
+
+    private int newNode(int nodeMove, int side, int parentNode) {
+        int node = nodeCount++;
+        move[node] = nodeMove;
+        mover[node] = side;
+        parent[node] = parentNode;
+        firstChild[node] = -1;
+        childCount[node] = -1;
+        visits[node] = 0;
+        value[node] = 0;
+        return node;
+    }
+
+    /**
+     * Random COLONIZE, preferring one that completes a planet. Falls back to an
+     * energy core or RESUPPLY when no station can do anything.
+     */
+    private int rolloutMove() {
+        int count = 0;
+        int completing = Move.NONE;
+        int side = state.activeSide;
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            if (state.stationOwner[station] != side || !state.available[station]) {
+                continue;
+            }
+            for (int planet = 0; planet < state.planetCount; planet++) {
+                if (state.colonized[planet]) {
+                    continue;
+                }
+                int done = ForwardModel.completedTasks(state, station, planet);
+                if (done == 0) {
+                    continue;
+                }
+                int colonize = Move.colonize(station, planet, preferredBonus(planet));
+                moves[count++] = colonize;
+                if (done == state.remainingPrice(planet)) {
+                    completing = colonize;
+                }
+            }
+        }
+        if (completing != Move.NONE && nextInt(2) == 0) {
+            return completing;
+        }
+        if (count == 0 || nextInt(8) == 0) {
+            return count == 0 && state.held(side, Bonus.ENERGY_CORE) > 0 ? Move.ENERGY_CORE : Move.RESUPPLY;
+        }
+        return moves[nextInt(count)];
+    }
+
+    private int preferredBonus(int planet) {
+        return Bonus.points(state.bonus(planet, 1)) > Bonus.points(state.bonus(planet, 0)) ? 1 : 0;
+    }
+
+    static boolean isTerminal(GameState state) {
+        if (state.isOver()) {
+            return true;
+        }
+        for (int planet = 0; planet < state.planetCount; planet++) {
+            if (!state.colonized[planet]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Chance for us to win from here, squashed from the score margin. Planets a side
+     * already holds the majority of count as theirs.
+     */
+    static double evaluate(GameState state) {
+        int margin = state.score(GameState.ME) - state.score(GameState.OPP);
+        for (int planet = 0; planet < state.planetCount; planet++) {
+            if (state.colonized[planet]) {
+                continue;
+            }
+            int majority = state.majority(planet);
+            if (state.contribution(GameState.ME, planet) >= majority) {
+                margin += state.colonizationScore[planet];
+            } else if (state.contribution(GameState.OPP, planet) >= majority) {
+                margin -= state.colonizationScore[planet];
+            }
+        }
+        return 1.0 / (1.0 + Math.exp(-margin / REWARD_SCALE));
+    }
+
+    private int nextInt(int bound) {
+        // xorshift64
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) ((random >>> 33) % bound);
+    }
+}
+
+/**
+ * Root parallel MCTS: every thread grows its own tree from the same root with its
+ * own random stream, the caller's thread included. At the deadline each tree adds
+ * the visits and value of its root moves to shared atomic arrays, the most
+ * visited move over all trees is played. The trees share nothing while they
+ * grow, so there are no locks and no cache lines bouncing between cores.
+ * Root moves are generated the same way in every tree, mergeRoot() matches them
+ * by move anyway.
+ */
+class ParallelSearch {
+    final MonteCarloSearch[] trees;
+    private final ForkJoinPool pool;
+    private final ForkJoinTask<?>[] tasks;
+    private final ForwardModel model = new ForwardModel();
+    private final GameState root = new GameState();
+
+    // Root moves and their merged statistics, value in MonteCarloSearch.VALUE_ONE
+    // fixed point
+    final int[] rootMoves = new int[512];
+    int rootCount;
+    final AtomicLongArray visits = new AtomicLongArray(rootMoves.length);
+    final AtomicLongArray value = new AtomicLongArray(rootMoves.length);
+
+    // Statistics of the last search, for reporting
+    long playouts;
+    long elapsedNanos;
+
+    ParallelSearch(long seed, int threads) {
+        trees = new MonteCarloSearch[threads];
+        for (int i = 0; i < threads; i++) {
+            // Every tree gets a different random stream
+            trees[i] = new MonteCarloSearch(seed + i * 0x9E3779B97F4A7C15L);
+        }
+        pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
+        tasks = new ForkJoinTask<?>[threads];
+    }
+
+    /**
+     * Searches from position until deadline on all threads and returns the most
+     * visited root move.
+     */
+    int search(GameState position, long deadline) {
+        long start = System.nanoTime();
+        root.copyFrom(position);
+        rootCount = model.generate(root, rootMoves);
+        for (int i = 0; i < rootCount; i++) {
+            visits.set(i, 0);
+            value.set(i, 0);
+        }
+        for (int i = 1; i < trees.length; i++) {
+            MonteCarloSearch tree = trees[i];
+            tasks[i] = pool.submit(() -> grow(tree, deadline));
+        }
+        grow(trees[0], deadline);
+        playouts = trees[0].playouts;
+        for (int i = 1; i < trees.length; i++) {
+            tasks[i].join();
+            playouts += trees[i].playouts;
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return bestMove();
+    }
+
+    /**
+     * Shuts the pool down, its idle threads end. No searches after this.
+     */
+    void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private void grow(MonteCarloSearch tree, long deadline) {
+        tree.start(root);
+        tree.run(deadline);
+        tree.mergeRoot(rootMoves, rootCount, visits, value);
+    }
+
+    int bestMove() {
+        int best = -1;
+        for (int i = 0; i < rootCount; i++) {
+            if (best < 0 || visits.get(i) > visits.get(best)
+                    || visits.get(i) == visits.get(best) && value.get(i) > value.get(best)) {
+                best = i;
+            }
+        }
+        return best < 0 || visits.get(best) == 0 ? Move.RESUPPLY : rootMoves[best];
+    }
+}
+
+/**
+ * Keeps the search busy on a background thread while the opponent thinks. After
+ * our main action, the position we expect to be asked about next (our move, then
+ * the opponent's most visited replies) is searched until the next input arrives.
+ * If the input is that position the next turn carries on with the tree, otherwise
+ * it's thrown away. The worker only touches the search between start() and
+ * stop(), the two semaphores hand it over between the threads.
+ */
+class Ponderer {
+    private final MonteCarloSearch search;
+    private final GameState predicted = new GameState();
+    private final Semaphore go = new Semaphore(0);
+    private final Semaphore done = new Semaphore(0);
+    private boolean running;
+    private volatile boolean closed;
+    // predicted holds the position the search was set up for
+    private boolean ready;
+    long hits;
+    long misses;
+
+    Ponderer(MonteCarloSearch search) {
+        this.search = search;
+        Thread worker = new Thread(this::work, "ponder");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Starts pondering after move was played from the root of the last search.
+     *
+     * @return false if there's no position to ponder on
+     */
+    boolean start(int move) {
+        ready = search.predict(move, predicted);
+        if (!ready) {
+            return false;
+        }
+        search.stopRequested = false;
+        running = true;
+        go.release();
+        return true;
+    }
+
+    /**
+     * Stops the worker and waits for it, returns right away if it isn't running.
+     */
+    void stop() {
+        if (!running) {
+            return;
+        }
+        search.stopRequested = true;
+        done.acquireUninterruptibly();
+        running = false;
+    }
+
+    /**
+     * Stops pondering for good and lets the worker thread end.
+     */
+    void close() {
+        stop();
+        closed = true;
+        go.release();
+    }
+
+    /**
+     * @return true if state is the position pondered on, the search tree then
+     *         belongs to it
+     */
+    boolean hit(GameState state) {
+        if (!ready) {
+            return false;
+        }
+        ready = false;
+        if (predicted.hash == state.hash) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    private void work() {
+        while (true) {
+            go.acquireUninterruptibly();
+            if (closed) {
+                return;
+            }
+            search.start(predicted);
+            search.ponder();
+            done.release();
+        }
+    }
+}
+
+/**
+ * JIT warm-up for the long first turn. A shadow Game with the same decision mode
+ * plays synthetic turns until the deadline, so the methods the bot runs every
+ * turn are compiled before the tight turns start. The synthetic states
+ * keep the real stations and objectives and shuffle everything else, with a fixed
+ * seed so runs are comparable.
+ */
+class WarmUp {
+    // Short search turns, many calls through the whole pipeline beat a few long ones
+    static final int SEARCH_MILLIS = 2;
+
+    /**
+     * @return the number of synthetic turns played
+     */
+    static int run(Game game, long deadline) {
+        // Everything that picks the code paths the real turns take. No pondering, no
+        // stats and no warm-up of its own
+        BotConfig config = new BotConfig();
+        config.mode = game.config.mode;
+        config.seed = game.config.seed;
+        config.turnMillis = SEARCH_MILLIS;
+        config.firstTurnMillis = SEARCH_MILLIS;
+        config.stats = false;
+        config.reuse = game.config.reuse;
+        config.logLevel = game.config.logLevel;
+        config.threads = game.config.threads;
+        config.weights = game.config.weights;
+        config.endgame = game.config.endgame;
+        Game shadow = new Game(config);
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+        shadow.out = nowhere;
+        shadow.err = nowhere;
+        Random random = new Random(config.seed);
+        int runs = 0;
+        while (System.nanoTime() < deadline) {
+            shuffle(game.state, shadow.state, random);
+            shadow.play();
+            runs++;
+        }
+        shadow.close();
+        return runs;
+    }
+
+    /**
+     * Fills state with a random position that has real's stations and objectives.
+     */
+    static void shuffle(GameState real, GameState state, Random random) {
+        state.copyFrom(real);
+        state.sectorIndex = random.nextInt(GameState.SECTORS);
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            state.available[station] = random.nextInt(4) != 0;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                int objective = state.objective(station, i);
+                state.tech[station * GameState.TECHS + i] = random.nextInt(objective + 1);
+            }
+        }
+        state.planetCount = 1 + random.nextInt(GameState.MAX_PLANETS);
+        for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+            state.planetId[planet] = planet;
+            int total = 3 + 2 * random.nextInt(4);
+            int remaining = total;
+            for (int side = 0; side < 2; side++) {
+                int done = random.nextInt(total / 2 + 1);
+                done = Math.min(done, remaining - 1);
+                state.contribution[side * GameState.MAX_PLANETS + planet] = done;
+                remaining -= done;
+            }
+            Arrays.fill(state.tasks, planet * GameState.TECHS, (planet + 1) * GameState.TECHS, 0);
+            for (int i = 0; i < remaining; i++) {
+                state.tasks[planet * GameState.TECHS + random.nextInt(GameState.TECHS)]++;
+            }
+            state.colonizationScore[planet] = state.sectorIndex + 1;
+            state.planetBonus[planet * 2] = random.nextInt(Bonus.COUNT);
+            state.planetBonus[planet * 2 + 1] = random.nextInt(Bonus.COUNT);
+        }
+        for (int i = 0; i < state.inventory.length; i++) {
+            state.inventory[i] = random.nextInt(4) == 0 ? 1 + random.nextInt(2) : 0;
+        }
+        state.colonizationPoints[GameState.ME] = random.nextInt(10);
+        state.colonizationPoints[GameState.OPP] = random.nextInt(10);
+        state.activeSide = GameState.ME;
+        state.artifact = GameState.NO_ARTIFACT;
+        state.colonizedInSector = GameState.MAX_PLANETS - state.planetCount;
+        Arrays.fill(state.preference, 0);
+        for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+            state.colonized[planet] = planet >= state.planetCount;
+        }
+        state.refresh();
+    }
+}
+
+/**
+ * Diagnostics without formatting on the hot path. A record is a kind, its level,
+ * the turn and a few numbers, written into preallocated arrays that hold the last
+ * CAPACITY records as a ring. Nothing is turned into text until flush() prints
+ * the new records at enabled levels (Game does that once per turn) or dump()
+ * prints what's left of the ring, at the end of the game or after play caught an
+ * exception. Adding a record doesn't allocate, so with the level at ERROR or OFF
+ * a turn doesn't either.
+ */
+class DebugLog {
+    static final int OFF = 0;
+    static final int ERROR = 1;
+    static final int INFO = 2;
+    static final int DEBUG = 3;
+    static final String[] LEVELS = { "off", "error", "info", "debug" };
+    // A greedy turn writes about 25, so that's the last 40 turns or so
+    static final int CAPACITY = 1 << 10;
+
+    // Record kinds, with what goes into the fields
+    static final int READ = 0; // sector, planets, our points, their points
+    static final int TURN = 1; // nanos, bytes allocated, collections, gc millis
+    static final int UPGRADE = 2; // tech, station id, new level
+    static final int RATING = 3; // station id, planet id, rating in x
+    static final int CHOSEN = 4; // station id, planet id, rating in x
+    static final int PLAN = 5; // chain length, positions scored
+    static final int STEP = 6; // move, station id, planet id of one move of the plan
+    static final int ENDGAME = 7; // proven 1/0, depth, margin, nodes, nanos
+    static final int MCTS = 8; // playouts, nanos, FRESH/PONDER_HIT/REUSED, what was carried over
+    static final int WARMUP = 9; // synthetic turns, nanos
+
+    // Where an MCTS tree came from
+    static final int FRESH = 0;
+    static final int PONDER_HIT = 1;
+    static final int REUSED = 2;
+
+    final int level;
+    // Stamped on every record, Game keeps it current
+    int turn;
+
+    private final byte[] kind = new byte[CAPACITY];
+    private final byte[] recordLevel = new byte[CAPACITY];
+    private final int[] recordTurn = new int[CAPACITY];
+    private final long[] a = new long[CAPACITY];
+    private final long[] b = new long[CAPACITY];
+    private final long[] c = new long[CAPACITY];
+    private final long[] d = new long[CAPACITY];
+    private final long[] e = new long[CAPACITY];
+    private final double[] x = new double[CAPACITY];
+    // Sequence numbers: records written, up to where flush() and dump() got
+    private long written;
+    private long flushed;
+    private long dumped;
+
+    DebugLog(int level) {
+        this.level = level;
+    }
+
+    static int level(String name) {
+        for (int level = 0; level < LEVELS.length; level++) {
+            if (LEVELS[level].equals(name)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("Unknown log level " + name);
+    }
+
+    boolean enabled(int level) {
+        return level <= this.level;
+    }
+
+    void add(int level, int kind, long a, long b, long c, long d, long e) {
+        write(level, kind, a, b, c, d, e, 0);
+    }
+
+    void add(int level, int kind, long a, long b, double x) {
+        write(level, kind, a, b, 0, 0, 0, x);
+    }
+
+    private void write(int level, int kind, long a, long b, long c, long d, long e, double x) {
+        if (this.level == OFF) {
+            return;
+        }
+        int i = (int) (written++ & (CAPACITY - 1));
+        this.kind[i] = (byte) kind;
+        this.recordLevel[i] = (byte) level;
+        this.recordTurn[i] = turn;
+        this.a[i] = a;
+        this.b[i] = b;
+        this.c[i] = c;
+        this.d[i] = d;
+        this.e[i] = e;
+        this.x[i] = x;
+    }
+
+    /**
+     * Prints the records at enabled levels added since the last flush.
+     */
+    void flush(PrintStream err) {
+        for (long sequence = Math.max(flushed, written - CAPACITY); sequence < written; sequence++) {
+            int i = (int) (sequence & (CAPACITY - 1));
+            if (enabled(recordLevel[i])) {
+                err.println(format(i));
+            }
+        }
+        flushed = written;
+    }
+
+    /**
+     * Prints every record still in the ring that wasn't printed yet, whatever its
+     * level, for the context of whatever went wrong.
+     */
+    void dump(PrintStream err) {
+        if (level == OFF) {
+            return;
+        }
+        long first = Math.max(dumped, written - CAPACITY);
+        StringBuilder text = new StringBuilder();
+        int count = 0;
+        for (long sequence = first; sequence < written; sequence++) {
+            int i = (int) (sequence & (CAPACITY - 1));
+            if (sequence >= flushed || !enabled(recordLevel[i])) {
+                text.append(format(i)).append('\n');
+                count++;
+            }
+        }
+        if (count > 0) {
+            err.print("Log, last " + count + " records not printed yet:\n" + text);
+        }
+        flushed = written;
+        dumped = written;
+    }
+
+    private String format(int i) {
+        String prefix = "T" + recordTurn[i] + " ";
+        switch (kind[i]) {
+            case READ:
+                return prefix + "read sector " + a[i] + ", " + b[i] + " planets, points " + c[i] + "-" + d[i];
+            case TURN:
+                return prefix + a[i] / 1000 + "us " + b[i] + "B gc " + c[i] + "/" + d[i] + "ms";
+            case UPGRADE:
+                return prefix + "Upgrading tech " + a[i] + " of station " + b[i] + " to " + c[i];
+            case RATING:
+                return prefix + "Rating [(" + a[i] + "->" + b[i] + "):" + x[i] + "]";
+            case CHOSEN:
+                return prefix + "Chosen [(" + a[i] + "->" + b[i] + "):" + x[i] + "]";
+            case PLAN:
+                return prefix + "Plan: " + a[i] + " moves (" + b[i] + " positions)";
+            case STEP:
+                return prefix + "  " + Move.toCommand((int) a[i], (int) b[i], (int) c[i]);
+            case ENDGAME:
+                return prefix + "Endgame: " + (a[i] == 1 ? "proven" : "unproven at depth " + b[i]) + ", margin " + c[i]
+                        + ", " + d[i] + " nodes in " + e[i] / 1_000_000 + "ms";
+            case MCTS:
+                String carried = c[i] == PONDER_HIT ? ", ponder hit with " + d[i] + " playouts"
+                        : c[i] == REUSED ? ", reused " + d[i] + " nodes" : "";
+                return prefix + "MCTS: " + a[i] + " playouts in " + b[i] / 1_000_000 + "ms ("
+                        + (b[i] == 0 ? 0 : a[i] * 1_000_000_000L / b[i]) + "/s)" + carried;
+            case WARMUP:
+                return prefix + "Warm-up: " + a[i] + " synthetic turns in " + b[i] / 1_000_000 + "ms";
+            default:
+                return prefix + "unknown record " + kind[i];
+        }
+    }
+}
+
+/**
+ * Measures every turn from the end of parsing to the printed command and the log
+ * lines flushed after it: wall time, bytes allocated by the thread and garbage
+ * collections in between. Only the formatting of the TURN line itself falls
+ * outside, it's written after the measurement. Logs one
+ * compact line per turn and prints a percentile summary at the end of the game, and
+ * optionally commits a JFR event per turn so a recording can be looked at
+ * offline (run with -XX:StartFlightRecording and jfr=on).
+ */
+class TurnStats {
+    private final com.sun.management.ThreadMXBean threads;
+    private final GarbageCollectorMXBean[] collectors;
+    private final boolean jfr;
+
+    private long[] nanos = new long[256];
+    private long[] allocated = new long[256];
+    private int turns;
+    private long gcCount;
+    private long gcMillis;
+
+    private long startNanos;
+    private long startAllocated;
+    private long startGcCount;
+    private long startGcMillis;
+    private TurnEvent event;
+
+    @Name("codgam.Turn")
+    @Label("Turn")
+    @Category("codgam")
+    static class TurnEvent extends Event {
+        @Label("Turn")
+        int turn;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+        @Label("GC Count")
+        long gcCount;
+    }
+
+    TurnStats(boolean jfr) {
+        this.threads = threadBean();
+        this.collectors = ManagementFactory.getGarbageCollectorMXBeans().toArray(new GarbageCollectorMXBean[0]);
+        this.jfr = jfr;
+        if (jfr) {
+            event = new TurnEvent();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        // Only HotSpot style JVMs can count allocations
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    void startTurn(long now) {
+        if (jfr) {
+            event.begin();
+        }
+        startAllocated = allocatedBytes();
+        startGcCount = gcCount();
+        startGcMillis = gcMillis();
+        startNanos = now;
+    }
+
+    void endTurn(int turn, DebugLog log) {
+        long elapsed = System.nanoTime() - startNanos;
+        long bytes = allocatedBytes() - startAllocated;
+        long collections = gcCount() - startGcCount;
+        long pause = gcMillis() - startGcMillis;
+        if (turns == nanos.length) {
+            nanos = Arrays.copyOf(nanos, turns * 2);
+            allocated = Arrays.copyOf(allocated, turns * 2);
+        }
+        nanos[turns] = elapsed;
+        allocated[turns] = bytes;
+        turns++;
+        gcCount += collections;
+        gcMillis += pause;
+        if (jfr) {
+            event.end();
+            event.turn = turn;
+            event.allocated = bytes;
+            event.gcCount = collections;
+            event.commit();
+            event = new TurnEvent();
+        }
+        log.add(DebugLog.INFO, DebugLog.TURN, elapsed, bytes, collections, pause, 0);
+    }
+
+    void printSummary(PrintStream err) {
+        if (turns == 0) {
+            return;
+        }
+        long[] sortedNanos = Arrays.copyOf(nanos, turns);
+        long[] sortedBytes = Arrays.copyOf(allocated, turns);
+        Arrays.sort(sortedNanos);
+        Arrays.sort(sortedBytes);
+        err.println(turns + " turns, time p50 " + percentile(sortedNanos, 50) / 1000 + "us p99 "
+                + percentile(sortedNanos, 99) / 1000 + "us max " + sortedNanos[turns - 1] / 1000 + "us, alloc p50 "
+                + percentile(sortedBytes, 50) + "B p99 " + percentile(sortedBytes, 99) + "B max "
+                + sortedBytes[turns - 1] + "B, gc " + gcCount + " collections " + gcMillis + "ms");
+    }
+
+    long turnNanos(int turn) {
+        return nanos[turn];
+    }
+
+    long turnAllocated(int turn) {
+        return allocated[turn];
+    }
+
+    int turns() {
+        return turns;
+    }
+
+    static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+}
+
+/**
+ * Tokenizer for the game protocol. Reads the input in chunks into one reused byte
+ * buffer and parses ints and bonus names straight from the bytes, so reading a
+ * turn doesn't allocate (Scanner runs a regex and builds a String per token).
+ *
+ * Like Scanner, running out of input throws a NoSuchElementException and input
+ * that isn't a number or a bonus where one is expected throws its subclass
+ * InputMismatchException, so catch that one first.
+ */
+class ProtocolReader {
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    // Scratch space for one bonus token, longest one is ALIEN_ARTIFACT
+    private final byte[] token = new byte[32];
+    private static final byte[][] BONUS_TOKENS = new byte[Bonus.COUNT][];
+
+    static {
+        for (int i = 0; i < Bonus.COUNT; i++) {
+            BONUS_TOKENS[i] = Bonus.NAMES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    ProtocolReader(InputStream in) {
+        this(in, 1 << 16);
+    }
+
+    ProtocolReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    int nextInt() {
+        int c = skipWhitespace();
+        boolean negative = c == '-';
+        if (negative) {
+            c = read();
+        }
+        if (c < '0' || c > '9') {
+            throw new InputMismatchException("Expected a number, got '" + (char) c + "'");
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads one bonus token and returns its Bonus code.
+     */
+    int nextBonus() {
+        int c = skipWhitespace();
+        int length = 0;
+        while (c > ' ') {
+            if (length < token.length) {
+                token[length] = (byte) c;
+            }
+            length++;
+            c = read();
+        }
+        for (int code = 0; code < Bonus.COUNT; code++) {
+            byte[] name = BONUS_TOKENS[code];
+            if (name.length == length && Arrays.equals(name, 0, length, token, 0, length)) {
+                return code;
+            }
+        }
+        throw new InputMismatchException(
+                "Unknown bonus '" + new String(token, 0, Math.min(length, token.length), StandardCharsets.US_ASCII)
+                        + "'");
+    }
+
+    /**
+     * Blocks until there is input or the stream ended.
+     */
+    void awaitInput() {
+        if (position == limit && read() != -1) {
+            position--;
+        }
+    }
+
+    private int skipWhitespace() {
+        int c = read();
+        while (c != -1 && c <= ' ') {
+            c = read();
+        }
+        if (c == -1) {
+            throw new NoSuchElementException();
+        }
+        return c;
+    }
+
+    private int read() {
+        if (position == limit) {
+            try {
+                limit = in.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
+
+/**
+ * Builds commands as ASCII in one reused byte buffer and writes them out in one
+ * call, the output side of ProtocolReader. Printing a command this way doesn't
+ * create Strings.
+ */
+class CommandWriter {
+    private final byte[] buffer = new byte[64];
+    private int length;
+
+    CommandWriter word(String word) {
+        if (length > 0) {
+            buffer[length++] = ' ';
+        }
+        for (int i = 0; i < word.length(); i++) {
+            buffer[length++] = (byte) word.charAt(i);
+        }
+        return this;
+    }
+
+    CommandWriter number(int value) {
+        if (length > 0) {
+            buffer[length++] = ' ';
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // digits came out lowest first
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return this;
+    }
+
+    /**
+     * The command for move, like Move.toCommand.
+     */
+    CommandWriter move(GameState state, int move) {
+        switch (Move.type(move)) {
+            case Move.COLONIZE:
+                return word("COLONIZE").number(state.stationId[Move.first(move)])
+                        .number(state.planetId[Move.second(move)]).number(Move.third(move));
+            case Move.ENERGY_CORE:
+                return word("ENERGY_CORE");
+            case Move.ALIEN_ARTIFACT:
+                return word("ALIEN_ARTIFACT").number(Move.first(move)).number(Move.second(move));
+            case Move.TECH_RESEARCH:
+                return word("TECH_RESEARCH").number(state.stationId[Move.first(move)]).number(Move.second(move));
+            case Move.NEW_TECH:
+                return word("NEW_TECH").number(state.stationId[Move.first(move)]).number(Move.second(move))
+                        .word(Bonus.NAMES[Move.third(move)]);
+            default:
+                return word("RESUPPLY");
+        }
+    }
+
+    /**
+     * Ends the line, writes and flushes it, and starts the next command.
+     */
+    void send(PrintStream out) {
+        buffer[length++] = '\n';
+        out.write(buffer, 0, length);
+        out.flush();
+        length = 0;
+    }
+}
+
+class Player {
+
+    // Sector line that ends a game, the objectives of the next one follow. Only
+    // ProcessArena sends it, to bots running with multiGame=on
+    static final int GAME_OVER = -1;
+
+    public static void main(String args[]) {
+
+        Game mainGame = new Game(BotConfig.parse(args));
+        ProtocolReader in = new ProtocolReader(System.in);
+        boolean another;
+        do {
+            another = run(in, mainGame);
+            if (mainGame.stats != null) {
+                mainGame.stats.printSummary(System.err);
+            }
+            mainGame.newGame();
+        } while (another && mainGame.config.multiGame);
+    }
+
+    /**
+     * Reads the objectives and plays every turn until the input ends.
+     *
+     * @return true if the game ended on a GAME_OVER line rather than the end of
+     *         the input
+     */
+    static boolean run(ProtocolReader in, Game game) {
+        boolean gameOver = false;
+        // game loop, runs until the input ends
+        try {
+            readObjectives(in, game);
+            game.err.println("Read global state");
+            while (turn(in, game)) {
+            }
+            gameOver = true;
+            game.err.println("Game over");
+        } catch (InputMismatchException e) {
+            game.err.println("Parse error: " + e.getMessage());
+        } catch (NoSuchElementException e) {
+            game.err.println("Input ended");
+        }
+        game.stopPondering();
+        game.log.dump(game.err);
+        return gameOver;
+    }
+
+    /**
+     * Waits for the next turn's input, reads it and plays.
+     *
+     * @return false if the input was a GAME_OVER line instead of a turn
+     */
+    static boolean turn(ProtocolReader in, Game game) {
+        // The search may be pondering while we wait, stop it as soon as the
+        // opponent is done so it doesn't steal time from our turn
+        in.awaitInput();
+        game.stopPondering();
+        if (!readTurn(in, game)) {
+            return false;
+        }
+        game.play();
+        return true;
+    }
+
+    static void readObjectives(ProtocolReader in, Game game) {
+        GameState state = game.state;
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            state.stationId[station] = in.nextInt();
+            state.stationOwner[station] = in.nextInt() == 1 ? GameState.ME : GameState.OPP;
+            state.objectiveScore[station] = in.nextInt(); // receive these points if tech level objectives are met
+            for (int i = 0; i < GameState.TECHS; i++) {
+                state.objective[station * GameState.TECHS + i] = in.nextInt();
+            }
+        }
+    }
+
+    /**
+     * @return false if the sector line was GAME_OVER, nothing else is read then
+     */
+    static boolean readTurn(ProtocolReader in, Game game) {
+        GameState state = game.state;
+        state.sectorIndex = in.nextInt();
+        if (state.sectorIndex == GAME_OVER) {
+            return false;
+        }
+        for (int i = 0; i < GameState.STATIONS; i++) {
+            int station = stationSlot(state, in.nextInt());
+            state.stationOwner[station] = in.nextInt() == 1 ? GameState.ME : GameState.OPP;
+            state.available[station] = in.nextInt() == 1;
+            for (int t = 0; t < GameState.TECHS; t++) {
+                state.tech[station * GameState.TECHS + t] = in.nextInt();
+            }
+        }
+        int planetCount = in.nextInt();
+        if (planetCount < 0 || planetCount > GameState.MAX_PLANETS) {
+            throw new InputMismatchException("Expected at most " + GameState.MAX_PLANETS + " planets, got " + planetCount);
+        }
+        state.planetCount = planetCount;
+        for (int planet = 0; planet < planetCount; planet++) {
+            state.planetId[planet] = in.nextInt();
+            for (int t = 0; t < GameState.TECHS; t++) {
+                state.tasks[planet * GameState.TECHS + t] = in.nextInt();
+            }
+            // the amount of tasks each side has already completed
+            state.contribution[GameState.ME * GameState.MAX_PLANETS + planet] = in.nextInt();
+            state.contribution[GameState.OPP * GameState.MAX_PLANETS + planet] = in.nextInt();
+            state.colonizationScore[planet] = in.nextInt(); // points awarded to the colonizer having completed the most tasks
+            state.planetBonus[planet * 2] = in.nextBonus();
+            state.planetBonus[planet * 2 + 1] = in.nextBonus();
+        }
+        int bonusCount = in.nextInt(); // bonuses in both you and your opponent's inventories
+        // reset bonuses as we are parsing them
+        Arrays.fill(state.inventory, 0);
+        for (int i = 0; i < bonusCount; i++) {
+            boolean mine = in.nextInt() == 1;
+            int bonus = in.nextBonus();
+            if (mine) {
+                state.inventory[GameState.ME * Bonus.COUNT + bonus]++;
+            } else {
+                state.inventory[GameState.OPP * Bonus.COUNT + bonus]++;
+            }
+        }
+        state.colonizationPoints[GameState.ME] = in.nextInt(); // points from planet colonization, does not include bonus
+                                                              // points
+        state.colonizationPoints[GameState.OPP] = in.nextInt();
+
+        // We only ever get input when it's our turn, and the input only lists planets
+        // that are still open
+        state.resetHidden();
+        state.refresh();
+        return true;
+    }
+
+    /**
+     * The slot of a station from the objectives, an id we don't know is malformed
+     * input like any other.
+     */
+    private static int stationSlot(GameState state, int id) {
+        try {
+            return state.stationSlot(id);
+        } catch (IllegalArgumentException e) {
+            throw new InputMismatchException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Compares the old Scanner based input parsing with ProtocolReader. Takes the
+ * complete turns of ./data/four-rounds.txt, repeats them into one long stream and
+ * parses that stream with both readers, reporting time and allocated bytes per
+ * turn.
+ */
+public class ParserBenchmark {
+    static final int REPEATS = 2_000;
+    static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        try {
+            String file = args.length > 0 ? args[0] : "./data/four-rounds.txt";
+            List<String> lines = Files.readAllLines(Paths.get(file));
+            List<String> turns = completeTurns(lines);
+            int turnCount = turns.size();
+
+            StringBuilder data = new StringBuilder();
+            for (String line : lines.subList(0, 8)) {
+                data.append(line).append('\n');
+            }
+            for (int i = 0; i < REPEATS; i++) {
+                for (String turn : turns) {
+                    data.append(turn);
+                }
+            }
+            byte[] input = data.toString().getBytes(StandardCharsets.US_ASCII);
+            int totalTurns = turnCount * REPEATS;
+            System.out.println("Parsing " + totalTurns + " turns (" + input.length + " bytes) from " + file);
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long scannerStart = System.nanoTime();
+                long scannerAlloc = allocatedBytes();
+                parseWithScanner(input, totalTurns);
+                long scannerBytes = allocatedBytes() - scannerAlloc;
+                long scannerNanos = System.nanoTime() - scannerStart;
+
+                long readerStart = System.nanoTime();
+                long readerAlloc = allocatedBytes();
+                parseWithReader(input, totalTurns);
+                long readerBytes = allocatedBytes() - readerAlloc;
+                long readerNanos = System.nanoTime() - readerStart;
+
+                System.out.printf("round %2d  Scanner: %8.0f ns/turn %8d B/turn   ProtocolReader: %8.0f ns/turn %8d B/turn%n",
+                        round,
+                        scannerNanos / (double) totalTurns, scannerBytes / totalTurns,
+                        readerNanos / (double) totalTurns, readerBytes / totalTurns);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Cuts the turn section of a recorded input into whole turns. A recording can
+     * stop in the middle of a turn, that last part is dropped.
+     */
+    static List<String> completeTurns(List<String> lines) {
+        List<String> turns = new ArrayList<>();
+        int line = 8;
+        while (true) {
+            int planetLine = line + 9;
+            if (planetLine >= lines.size()) {
+                break;
+            }
+            int planetCount = Integer.parseInt(lines.get(planetLine).trim());
+            int bonusLine = planetLine + planetCount + 1;
+            if (bonusLine >= lines.size()) {
+                break;
+            }
+            int bonusCount = Integer.parseInt(lines.get(bonusLine).trim());
+            int end = bonusLine + bonusCount + 3;
+            if (end > lines.size()) {
+                break;
+            }
+            StringBuilder turn = new StringBuilder();
+            for (String l : lines.subList(line, end)) {
+                turn.append(l).append('\n');
+            }
+            turns.add(turn.toString());
+            line = end;
+        }
+        return turns;
+    }
+
+    static void parseWithReader(byte[] input, int turns) {
+        Game game = new Game();
+        ProtocolReader in = new ProtocolReader(new ByteArrayInputStream(input));
+        Player.readObjectives(in, game);
+        for (int i = 0; i < turns; i++) {
+            Player.readTurn(in, game);
+        }
+    }
+
+    /**
+     * The Scanner loop Player.main used before ProtocolReader, kept as the
+     * baseline. Fills the same GameState so both sides do the same work.
+     */
+    static void parseWithScanner(byte[] input, int turns) {
+        Game game = new Game();
+        GameState state = game.state;
+        Scanner in = new Scanner(new ByteArrayInputStream(input));
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            state.stationId[station] = in.nextInt();
+            state.stationOwner[station] = in.nextInt() == 1 ? GameState.ME : GameState.OPP;
+            state.objectiveScore[station] = in.nextInt();
+            for (int i = 0; i < GameState.TECHS; i++) {
+                state.objective[station * GameState.TECHS + i] = in.nextInt();
+            }
+        }
+        for (int turn = 0; turn < turns; turn++) {
+            state.sectorIndex = in.nextInt();
+            for (int i = 0; i < GameState.STATIONS; i++) {
+                int station = state.stationSlot(in.nextInt());
+                state.stationOwner[station] = in.nextInt() == 1 ? GameState.ME : GameState.OPP;
+                state.available[station] = in.nextInt() == 1;
+                for (int t = 0; t < GameState.TECHS; t++) {
+                    state.tech[station * GameState.TECHS + t] = in.nextInt();
+                }
+            }
+            state.planetCount = in.nextInt();
+            for (int planet = 0; planet < state.planetCount; planet++) {
+                state.planetId[planet] = in.nextInt();
+                for (int t = 0; t < GameState.TECHS; t++) {
+                    state.tasks[planet * GameState.TECHS + t] = in.nextInt();
+                }
+                state.contribution[GameState.ME * GameState.MAX_PLANETS + planet] = in.nextInt();
+                state.contribution[GameState.OPP * GameState.MAX_PLANETS + planet] = in.nextInt();
+                state.colonizationScore[planet] = in.nextInt();
+                state.planetBonus[planet * 2] = Arrays.asList(Bonus.NAMES).indexOf(in.next());
+                state.planetBonus[planet * 2 + 1] = Arrays.asList(Bonus.NAMES).indexOf(in.next());
+            }
+            int bonusCount = in.nextInt();
+            Arrays.fill(state.inventory, 0);
+            for (int i = 0; i < bonusCount; i++) {
+                int side = in.nextInt() == 1 ? GameState.ME : GameState.OPP;
+                state.inventory[side * Bonus.COUNT + Arrays.asList(Bonus.NAMES).indexOf(in.next())]++;
+            }
+            state.colonizationPoints[GameState.ME] = in.nextInt();
+            state.colonizationPoints[GameState.OPP] = in.nextInt();
+        }
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,598 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Referee for bots in their own processes, the way the platform runs them: a bot
+ * is a command line that reads the protocol on stdin and answers one command per
+ * line on stdout. The rules are the local Referee's. Each bot gets its input
+ * written to its stdin and has a time limit per turn to answer, measured from
+ * handing the input over to the line arriving, so the times include the process
+ * I/O. Too late or a dead process forfeits the game and the process is killed.
+ *
+ * Several matches run at once, each with its own pair of processes, and a single
+ * thread drives all of them: the bots' stdout is pumped into NIO pipes and one
+ * Selector waits for whichever answers first or the next deadline. The input is
+ * written by a feed thread per bot, so a bot that stops reading can't hold up
+ * the others' clocks. Like on the platform, a line that shows up when nobody
+ * asked is taken as the answer to the next turn of the same game.
+ *
+ * A bot process lives for the whole game. Bots that can play several games from
+ * one input (Player with multiGame=on) keep running across the games of their
+ * match with --reuse: a Player.GAME_OVER line ends a game and the next one's
+ * objectives follow. The others get a fresh process per game, the old one gets
+ * its stdin closed and EXIT_MILLIS to end before it's killed. A fresh process
+ * has startupMs on top of the first turn's limit to boot.
+ *
+ * Usage: java ProcessArena [options] "commandA" "commandB"
+ * --games n (20), --matches n at once (cores / 2), --seed n (1),
+ * --turnMs n (50), --firstTurnMs n (1000), --startupMs n (1000),
+ * --reuse A|B|AB, --logs dir for the bots' stderr (discarded otherwise)
+ * e.g. java ProcessArena --reuse A "java -cp build Player multiGame=on" "node JavascriptCode/local.js"
+ *
+ * Bots swap seats every game, so who starts doesn't skew the result.
+ */
+public class ProcessArena {
+    static final byte[] GAME_OVER = (Player.GAME_OVER + "\n").getBytes(StandardCharsets.US_ASCII);
+    static final String[] NAMES = { "A", "B" };
+    static final int NOBODY = -1;
+    // How long a bot whose stdin was closed gets to end before it's killed
+    static final int EXIT_MILLIS = 1000;
+
+    // Command line of each bot, split into words
+    final String[][] commands;
+    final boolean[] reuse = new boolean[2];
+    int turnMillis = 50;
+    int firstTurnMillis = 1000;
+    int startupMillis = 1000;
+    Path logs;
+
+    private final Selector selector;
+    // Processes that were told to end or killed, reaped at the end of run
+    private final List<Process> exiting = new ArrayList<>();
+    private long nextSeed;
+    private long lastSeed;
+
+    // Results by bot, 0 is A
+    int games;
+    int draws;
+    final int[] wins = new int[2];
+    final int[] illegal = new int[2];
+    final int[] timeouts = new int[2];
+    final int[] crashes = new int[2];
+    final int[] starts = new int[2];
+    // Score margin of A over B in the games nobody forfeited
+    long margin;
+    int finished;
+    final Latencies[] firstTurns = { new Latencies(), new Latencies() };
+    final Latencies[] turns = { new Latencies(), new Latencies() };
+
+    ProcessArena(String commandA, String commandB) throws IOException {
+        commands = new String[][] { commandA.trim().split("\\s+"), commandB.trim().split("\\s+") };
+        selector = Selector.open();
+    }
+
+    public static void main(String[] args) {
+        try {
+            int games = 20;
+            int matches = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            long seed = 1;
+            String reuse = "";
+            List<String> commands = new ArrayList<>();
+            ProcessArena arena = null;
+            int turnMillis = 50;
+            int firstTurnMillis = 1000;
+            int startupMillis = 1000;
+            Path logs = null;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--games":
+                        games = Integer.parseInt(args[++i]);
+                        break;
+                    case "--matches":
+                        matches = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--turnMs":
+                        turnMillis = Integer.parseInt(args[++i]);
+                        break;
+                    case "--firstTurnMs":
+                        firstTurnMillis = Integer.parseInt(args[++i]);
+                        break;
+                    case "--startupMs":
+                        startupMillis = Integer.parseInt(args[++i]);
+                        break;
+                    case "--reuse":
+                        reuse = args[++i];
+                        break;
+                    case "--logs":
+                        logs = Paths.get(args[++i]);
+                        break;
+                    default:
+                        commands.add(args[i]);
+                }
+            }
+            if (commands.size() != 2) {
+                System.out.println("Usage: java ProcessArena [--games n] [--matches n] [--seed n] [--turnMs n]"
+                        + " [--firstTurnMs n] [--startupMs n] [--reuse A|B|AB] [--logs dir] \"commandA\" \"commandB\"");
+                return;
+            }
+            arena = new ProcessArena(commands.get(0), commands.get(1));
+            arena.turnMillis = turnMillis;
+            arena.firstTurnMillis = firstTurnMillis;
+            arena.startupMillis = startupMillis;
+            arena.reuse[0] = reuse.contains("A");
+            arena.reuse[1] = reuse.contains("B");
+            arena.logs = logs;
+            if (logs != null) {
+                Files.createDirectories(logs);
+            }
+            System.out.println("A: " + commands.get(0) + "  vs  B: " + commands.get(1) + "  (" + games + " games, "
+                    + matches + " at once)");
+            long start = System.nanoTime();
+            arena.run(games, matches, seed);
+            arena.report(System.out, (System.nanoTime() - start) / 1e9);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Plays count games, seeds from firstSeed on, matches of them at a time.
+     */
+    void run(int count, int matches, long firstSeed) throws IOException {
+        nextSeed = firstSeed;
+        lastSeed = firstSeed + count;
+        List<Match> running = new ArrayList<>();
+        for (int i = 0; i < Math.min(matches, count); i++) {
+            Match match = new Match(this, i);
+            running.add(match);
+            match.startGame(nextSeed++);
+            match.nextTurn();
+        }
+        try {
+            while (running.stream().anyMatch(match -> match.referee != null)) {
+                long now = System.nanoTime();
+                long wait = Long.MAX_VALUE;
+                for (Match match : running) {
+                    if (match.waiting != NOBODY) {
+                        wait = Math.min(wait, match.deadline - now);
+                    }
+                }
+                selector.select(Math.max(1, wait / 1_000_000 + 1));
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        // its game ended while handling another key
+                        continue;
+                    }
+                    BotProcess bot = (BotProcess) key.attachment();
+                    bot.read();
+                    bot.match.received(bot.who);
+                }
+                selector.selectedKeys().clear();
+                now = System.nanoTime();
+                for (Match match : running) {
+                    if (match.waiting != NOBODY) {
+                        BotProcess bot = match.bots[match.waiting];
+                        if (bot.ended || bot.broken) {
+                            match.forfeit(match.waiting, crashes);
+                        } else if (now > match.deadline) {
+                            match.forfeit(match.waiting, timeouts);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (Match match : running) {
+                match.stop();
+            }
+            reap();
+        }
+    }
+
+    /**
+     * Waits for the processes that were told to end, kills what's still running
+     * after EXIT_MILLIS.
+     */
+    private void reap() {
+        long deadline = System.nanoTime() + EXIT_MILLIS * 1_000_000L;
+        for (Process process : exiting) {
+            try {
+                long left = Math.max(0, deadline - System.nanoTime());
+                if (!process.waitFor(left, TimeUnit.NANOSECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        exiting.clear();
+    }
+
+    private void exiting(Process process) {
+        exiting.removeIf(ended -> !ended.isAlive());
+        exiting.add(process);
+    }
+
+    /**
+     * @return the seed of the next game to play, -1 when all are handed out
+     */
+    long nextGame() {
+        return nextSeed < lastSeed ? nextSeed++ : -1;
+    }
+
+    void report(PrintStream out, double seconds) {
+        out.printf("games: %d  A wins: %d  draws: %d  B wins: %d%n", games, wins[0], draws, wins[1]);
+        out.printf("A win rate: %.1f%%  average margin A-B: %+.2f (%d games without forfeit)%n",
+                100 * (wins[0] + draws / 2.0) / games, finished == 0 ? 0 : margin / (double) finished, finished);
+        for (int bot = 0; bot < 2; bot++) {
+            out.printf("%s: %d illegal, %d timeouts, %d crashes, %d processes started%n", NAMES[bot], illegal[bot],
+                    timeouts[bot], crashes[bot], starts[bot]);
+            out.printf("   first turn %s%n   other turns %s%n", firstTurns[bot], turns[bot]);
+        }
+        out.printf("%.2f games/s (%.1fs)%n", games / seconds, seconds);
+    }
+
+    /**
+     * Response times of one bot, microseconds.
+     */
+    static class Latencies {
+        private long[] micros = new long[1024];
+        private int count;
+
+        void add(long nanos) {
+            if (count == micros.length) {
+                micros = Arrays.copyOf(micros, count * 2);
+            }
+            micros[count++] = nanos / 1000;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0) {
+                return "-";
+            }
+            long[] sorted = Arrays.copyOf(micros, count);
+            Arrays.sort(sorted);
+            return String.format("p50 %dus p99 %dus max %dus (%d)", TurnStats.percentile(sorted, 50),
+                    TurnStats.percentile(sorted, 99), sorted[count - 1], count);
+        }
+    }
+
+    /**
+     * One table: a referee and a process per bot, games one after the other.
+     */
+    static class Match {
+        final ProcessArena arena;
+        final int index;
+        // By bot, 0 is A
+        final BotProcess[] bots = new BotProcess[2];
+        private final boolean[] firstTurn = new boolean[2];
+        private final GameState view = new GameState();
+        private final StringBuilder text = new StringBuilder();
+        Referee referee;
+        private int seatOfA;
+        // Bot whose answer we wait for, and until when
+        int waiting = NOBODY;
+        long deadline;
+        private long sentNanos;
+
+        Match(ProcessArena arena, int index) {
+            this.arena = arena;
+            this.index = index;
+        }
+
+        /**
+         * Deals a new game and makes sure both bots have a process for it.
+         */
+        void startGame(long seed) throws IOException {
+            seatOfA = (int) (seed & 1);
+            referee = new Referee(seed);
+            referee.newGame((int) ((seed >>> 1) & 1));
+            for (int bot = 0; bot < 2; bot++) {
+                if (bots[bot] == null) {
+                    bots[bot] = new BotProcess(this, bot);
+                    arena.starts[bot]++;
+                }
+                bots[bot].objectivesSent = false;
+                // A reused bot's leftovers belong to the last game
+                bots[bot].lines.clear();
+                firstTurn[bot] = true;
+            }
+        }
+
+        private int seat(int bot) {
+            return bot == 0 ? seatOfA : 1 - seatOfA;
+        }
+
+        private int bot(int seat) {
+            return seat == seatOfA ? 0 : 1;
+        }
+
+        /**
+         * Sends the player to move its input and takes an answer that's already
+         * there, until one has to be waited for or the match is done.
+         */
+        void nextTurn() throws IOException {
+            while (referee != null) {
+                if (referee.isOver()) {
+                    endGame(NOBODY);
+                    continue;
+                }
+                int player = referee.activePlayer();
+                int who = bot(player);
+                BotProcess bot = bots[who];
+                referee.viewFor(player, view);
+                text.setLength(0);
+                if (!bot.objectivesSent) {
+                    view.appendObjectives(text);
+                    bot.objectivesSent = true;
+                }
+                view.appendTurn(text);
+                if (bot.broken) {
+                    forfeit(who, arena.crashes);
+                    continue;
+                }
+                bot.send(text.toString().getBytes(StandardCharsets.US_ASCII));
+                sentNanos = System.nanoTime();
+                long limit = firstTurn[who] ? arena.firstTurnMillis : arena.turnMillis;
+                if (firstTurn[who] && bot.fresh) {
+                    limit += arena.startupMillis;
+                }
+                deadline = sentNanos + limit * 1_000_000L;
+                waiting = who;
+                String line = bot.lines.poll();
+                if (line == null) {
+                    return;
+                }
+                play(who, line, 0);
+            }
+        }
+
+        /**
+         * New output from bot, plays it if that's the answer we wait for.
+         */
+        void received(int who) throws IOException {
+            if (waiting != who || bots[who].lines.isEmpty()) {
+                return;
+            }
+            long nanos = System.nanoTime() - sentNanos;
+            if (nanos > deadline - sentNanos) {
+                // Came in after the deadline, the loop forfeits it
+                return;
+            }
+            play(who, bots[who].lines.poll(), nanos);
+            nextTurn();
+        }
+
+        private void play(int who, String command, long nanos) {
+            waiting = NOBODY;
+            (firstTurn[who] ? arena.firstTurns[who] : arena.turns[who]).add(nanos);
+            firstTurn[who] = false;
+            bots[who].fresh = false;
+            if (!referee.play(command)) {
+                arena.illegal[who]++;
+            }
+        }
+
+        /**
+         * Ends the game with who losing for a timeout or a crash, counted in
+         * counter, and replaces its process.
+         */
+        void forfeit(int who, int[] counter) throws IOException {
+            counter[who]++;
+            bots[who].kill();
+            bots[who] = null;
+            endGame(who);
+            nextTurn();
+        }
+
+        private void endGame(int forfeited) throws IOException {
+            waiting = NOBODY;
+            arena.games++;
+            if (forfeited != NOBODY) {
+                arena.wins[1 - forfeited]++;
+            } else {
+                int margin = referee.state.score(seat(0)) - referee.state.score(seat(1));
+                arena.margin += margin;
+                arena.finished++;
+                if (margin > 0) {
+                    arena.wins[0]++;
+                } else if (margin < 0) {
+                    arena.wins[1]++;
+                } else {
+                    arena.draws++;
+                }
+            }
+            for (int bot = 0; bot < 2; bot++) {
+                if (bots[bot] == null) {
+                    continue;
+                }
+                if (arena.reuse[bot] && !bots[bot].broken) {
+                    bots[bot].send(GAME_OVER);
+                } else {
+                    bots[bot].close();
+                    bots[bot] = null;
+                }
+            }
+            long seed = arena.nextGame();
+            if (seed < 0) {
+                stop();
+                referee = null;
+            } else {
+                startGame(seed);
+            }
+        }
+
+        void stop() {
+            for (int bot = 0; bot < 2; bot++) {
+                if (bots[bot] != null) {
+                    bots[bot].close();
+                    bots[bot] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A running bot. A pump thread copies its stdout into a pipe whose source end
+     * is registered with the arena's selector, complete lines collect in lines. A
+     * feed thread writes the queued input to its stdin, blocking there if the bot
+     * doesn't read.
+     */
+    static class BotProcess {
+        // Queued after the last input, the feed thread closes stdin on it
+        private static final byte[] END_OF_INPUT = new byte[0];
+
+        final Match match;
+        final int who;
+        private final Process process;
+        private final BlockingQueue<byte[]> input = new LinkedBlockingQueue<>();
+        private final Thread feed;
+        private final Pipe.SourceChannel stdout;
+        private final SelectionKey key;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        private final StringBuilder partial = new StringBuilder();
+        final ArrayDeque<String> lines = new ArrayDeque<>();
+        boolean objectivesSent;
+        // Hasn't answered anything yet, gets startupMs on its first turn
+        boolean fresh = true;
+        // stdout closed, the process is gone
+        boolean ended;
+        // Writing its stdin failed, the process doesn't take input anymore
+        volatile boolean broken;
+
+        BotProcess(Match match, int who) throws IOException {
+            this.match = match;
+            this.who = who;
+            ProcessArena arena = match.arena;
+            ProcessBuilder builder = new ProcessBuilder(arena.commands[who]);
+            builder.redirectError(arena.logs == null ? Redirect.DISCARD
+                    : Redirect.appendTo(arena.logs.resolve("match" + match.index + "-" + NAMES[who] + ".log").toFile()));
+            process = builder.start();
+            Pipe pipe = Pipe.open();
+            stdout = pipe.source();
+            stdout.configureBlocking(false);
+            key = stdout.register(arena.selector, SelectionKey.OP_READ, this);
+            Thread pump = new Thread(() -> pump(process.getInputStream(), pipe.sink()),
+                    "pump match" + match.index + NAMES[who]);
+            pump.setDaemon(true);
+            pump.start();
+            feed = new Thread(() -> feed(process.getOutputStream(), arena.selector),
+                    "feed match" + match.index + NAMES[who]);
+            feed.setDaemon(true);
+            feed.start();
+        }
+
+        private static void pump(InputStream from, Pipe.SinkChannel to) {
+            byte[] bytes = new byte[1 << 12];
+            try (to) {
+                int read;
+                while ((read = from.read(bytes)) > 0) {
+                    ByteBuffer chunk = ByteBuffer.wrap(bytes, 0, read);
+                    while (chunk.hasRemaining()) {
+                        to.write(chunk);
+                    }
+                }
+            } catch (IOException e) {
+                // The process ended or the arena closed the pipe, nothing to pump
+            }
+        }
+
+        private void feed(OutputStream to, Selector selector) {
+            try (to) {
+                byte[] bytes;
+                while ((bytes = input.take()) != END_OF_INPUT) {
+                    to.write(bytes);
+                    to.flush();
+                }
+            } catch (IOException e) {
+                broken = true;
+                // Let the arena see it now rather than at the deadline
+                selector.wakeup();
+            } catch (InterruptedException e) {
+                // killed
+            }
+        }
+
+        /**
+         * Queues input for the bot, doesn't block.
+         */
+        void send(byte[] bytes) {
+            input.add(bytes);
+        }
+
+        /**
+         * Takes whatever the pipe has without blocking.
+         */
+        void read() throws IOException {
+            int read;
+            while ((read = stdout.read(buffer)) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    char c = (char) buffer.get();
+                    if (c == '\n') {
+                        int end = partial.length();
+                        if (end > 0 && partial.charAt(end - 1) == '\r') {
+                            end--;
+                        }
+                        lines.add(partial.substring(0, end));
+                        partial.setLength(0);
+                    } else {
+                        partial.append(c);
+                    }
+                }
+                buffer.clear();
+            }
+            if (read < 0) {
+                ended = true;
+                key.cancel();
+            }
+        }
+
+        /**
+         * Ends the input after what's queued, the bot should exit on its own. The
+         * arena kills it if it doesn't.
+         */
+        void close() {
+            input.add(END_OF_INPUT);
+            release();
+        }
+
+        void kill() {
+            process.destroyForcibly();
+            feed.interrupt();
+            release();
+        }
+
+        private void release() {
+            match.arena.exiting(process);
+            key.cancel();
+            try {
+                stdout.close();
+            } catch (IOException e) {
+                // nothing to do about it
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Local stand-in for the platform referee. Holds the real game state with side 0
+ * as the first player, deals stations, objectives and planets, hands each player
+ * the view it would read from the protocol and applies the commands through the
+ * forward model.
+ *
+ * We don't know the platform's pool of starting configurations, so the deal only
+ * mimics what we've seen in recorded games: stations start with 2 tech points and
+ * objectives 2-4 points above that, planets have an odd number of tasks that
+ * grows with the sector.
+ */
+class Referee {
+    final GameState state = new GameState();
+    final ForwardModel model = new ForwardModel();
+    private final Random random;
+    private int nextPlanetId;
+
+    Referee(long seed) {
+        random = new Random(seed);
+    }
+
+    void newGame(int firstPlayer) {
+        int firstStationId = random.nextInt(20);
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            state.stationId[station] = firstStationId + station;
+            state.stationOwner[station] = station < GameState.STATIONS / 2 ? 0 : 1;
+            state.available[station] = true;
+            int offset = station * GameState.TECHS;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                state.tech[offset + i] = 0;
+            }
+            addPoints(state.tech, offset, 2, 2);
+            System.arraycopy(state.tech, offset, state.objective, offset, GameState.TECHS);
+            int extra = 2 + random.nextInt(3);
+            addPoints(state.objective, offset, extra, 4);
+            state.objectiveScore[station] = 3 * (extra - 1);
+        }
+        Arrays.fill(state.inventory, 0);
+        Arrays.fill(state.colonizationPoints, 0);
+        state.sectorIndex = 0;
+        state.round = 0;
+        state.activeSide = firstPlayer;
+        state.artifact = GameState.NO_ARTIFACT;
+        nextPlanetId = 0;
+        dealPlanets();
+        state.refresh();
+        model.commit();
+    }
+
+    /**
+     * Fills the sector with 5 fresh planets.
+     */
+    void dealPlanets() {
+        state.planetCount = GameState.MAX_PLANETS;
+        state.colonizedInSector = 0;
+        int tasks = 5 + 2 * state.sectorIndex;
+        for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+            state.planetId[planet] = nextPlanetId++;
+            int offset = planet * GameState.TECHS;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                state.tasks[offset + i] = 0;
+            }
+            // odd total, either the sector size or two less
+            addPoints(state.tasks, offset, tasks - 2 * random.nextInt(2), Integer.MAX_VALUE);
+            state.contribution[planet] = 0;
+            state.contribution[GameState.MAX_PLANETS + planet] = 0;
+            state.preference[planet] = 0;
+            state.preference[GameState.MAX_PLANETS + planet] = 0;
+            state.colonizationScore[planet] = state.sectorIndex + 1;
+            state.planetBonus[planet * 2] = random.nextInt(Bonus.COUNT);
+            state.planetBonus[planet * 2 + 1] = random.nextInt(Bonus.COUNT);
+            state.colonized[planet] = false;
+        }
+    }
+
+    private void addPoints(int[] values, int offset, int points, int max) {
+        while (points > 0) {
+            int i = offset + random.nextInt(GameState.TECHS);
+            if (values[i] < max) {
+                values[i]++;
+                points--;
+            }
+        }
+    }
+
+    boolean isOver() {
+        return state.isOver();
+    }
+
+    int activePlayer() {
+        return state.activeSide;
+    }
+
+    /**
+     * Writes what player would read from the protocol into view: its own side as
+     * ME, only the open planets, no hidden forward model state.
+     */
+    void viewFor(int player, GameState view) {
+        view.copyFrom(state);
+        if (player == 1) {
+            for (int station = 0; station < GameState.STATIONS; station++) {
+                view.stationOwner[station] = 1 - state.stationOwner[station];
+            }
+            System.arraycopy(state.contribution, 0, view.contribution, GameState.MAX_PLANETS, GameState.MAX_PLANETS);
+            System.arraycopy(state.contribution, GameState.MAX_PLANETS, view.contribution, 0, GameState.MAX_PLANETS);
+            System.arraycopy(state.inventory, 0, view.inventory, Bonus.COUNT, Bonus.COUNT);
+            System.arraycopy(state.inventory, Bonus.COUNT, view.inventory, 0, Bonus.COUNT);
+            view.colonizationPoints[0] = state.colonizationPoints[1];
+            view.colonizationPoints[1] = state.colonizationPoints[0];
+        }
+        view.toTurnInput();
+    }
+
+    /**
+     * Plays the command line of the active player. Commands that don't parse or
+     * aren't legal are ignored and the turn passes, like on the platform.
+     *
+     * @return false if the command was rejected
+     */
+    boolean play(String command) {
+        int move = parse(command);
+        boolean legal = move != Move.NONE && model.isLegal(state, move);
+        int sector = state.sectorIndex;
+        if (legal) {
+            model.apply(state, move);
+        } else {
+            model.skipTurn(state);
+        }
+        model.commit();
+        if (state.sectorIndex != sector && !state.isOver()) {
+            dealPlanets();
+            state.refresh();
+        }
+        return legal;
+    }
+
+    /**
+     * Translates a protocol command into a Move on our slots, Move.NONE if it
+     * doesn't make sense. Anything after the arguments is a message and ignored.
+     */
+    int parse(String command) {
+        if (command == null) {
+            return Move.NONE;
+        }
+        String[] words = command.trim().split("\\s+");
+        try {
+            switch (words[0]) {
+                case "RESUPPLY":
+                    return Move.RESUPPLY;
+                case "ENERGY_CORE":
+                    return Move.ENERGY_CORE;
+                case "COLONIZE": {
+                    int planet = planetSlot(Integer.parseInt(words[2]));
+                    int bonusIndex = Integer.parseInt(words[3]);
+                    if (planet < 0 || bonusIndex < 0 || bonusIndex > 1) {
+                        return Move.NONE;
+                    }
+                    return Move.colonize(state.stationSlot(Integer.parseInt(words[1])), planet, bonusIndex);
+                }
+                case "ALIEN_ARTIFACT":
+                    return Move.alienArtifact(tech(words[1]), tech(words[2]));
+                case "TECH_RESEARCH":
+                    return Move.techResearch(state.stationSlot(Integer.parseInt(words[1])), tech(words[2]));
+                case "NEW_TECH": {
+                    int bonus = Arrays.asList(Bonus.NAMES).indexOf(words[3]);
+                    if (bonus < 0) {
+                        return Move.NONE;
+                    }
+                    return Move.newTech(state.stationSlot(Integer.parseInt(words[1])), tech(words[2]), bonus);
+                }
+                default:
+                    return Move.NONE;
+            }
+        } catch (RuntimeException e) {
+            // Missing arguments, garbage numbers or unknown stations
+            return Move.NONE;
+        }
+    }
+
+    private static int tech(String word) {
+        int tech = Integer.parseInt(word);
+        if (tech < 0 || tech >= GameState.TECHS) {
+            throw new IllegalArgumentException("Unknown tech " + tech);
+        }
+        return tech;
+    }
+
+    private int planetSlot(int id) {
+        for (int planet = 0; planet < state.planetCount; planet++) {
+            if (state.planetId[planet] == id && !state.colonized[planet]) {
+                return planet;
+            }
+        }
+        return -1;
+    }
+}
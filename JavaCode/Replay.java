@@ -0,0 +1,314 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compact binary format for recorded games, so regression runs and benchmarks can
+ * stream lots of turns without tokenizing text again.
+ *
+ * A file starts with MAGIC and VERSION and holds any number of games. A game is
+ * GAME, the 8 objective lines as varints, then one TURN record per turn and END.
+ * Each turn is flattened into TURN_FIELDS ints (see encode). A record only
+ * stores the fields that changed since the previous turn of the game: a bitmap
+ * of changed fields, their zigzag varint deltas, and our command as ASCII (empty
+ * if we don't know it). Most station and planet fields stay the same from one
+ * turn to the next, so a turn usually takes 20-40 bytes.
+ *
+ * Reader memory-maps the file and decodes straight into a GameState.
+ */
+class Replay {
+    static final String SUFFIX = ".replay";
+    static final int MAGIC = 0x43475250; // "CGRP"
+    static final int VERSION = 1;
+    static final byte GAME = 'G';
+    static final byte TURN = 'T';
+    static final byte END = 'E';
+
+    static final int STATION_FIELDS = 5; // available, tech0-3
+    static final int PLANET_FIELDS = 10; // id, tasks0-3, contributions, score, bonuses
+    static final int TURN_FIELDS = 1 + GameState.STATIONS * STATION_FIELDS + 1
+            + GameState.MAX_PLANETS * PLANET_FIELDS + 2 * Bonus.COUNT + 2;
+    static final int BITMAP_BYTES = (TURN_FIELDS + 7) / 8;
+
+    /**
+     * Flattens the turn input part of state into TURN_FIELDS ints.
+     */
+    static void encode(GameState state, int[] fields) {
+        int f = 0;
+        fields[f++] = state.sectorIndex;
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            fields[f++] = state.available[station] ? 1 : 0;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                fields[f++] = state.tech(station, i);
+            }
+        }
+        fields[f++] = state.planetCount;
+        for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+            boolean open = planet < state.planetCount;
+            fields[f++] = open ? state.planetId[planet] : 0;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                fields[f++] = open ? state.tasks(planet, i) : 0;
+            }
+            fields[f++] = open ? state.contribution(GameState.ME, planet) : 0;
+            fields[f++] = open ? state.contribution(GameState.OPP, planet) : 0;
+            fields[f++] = open ? state.colonizationScore[planet] : 0;
+            fields[f++] = open ? state.bonus(planet, 0) : 0;
+            fields[f++] = open ? state.bonus(planet, 1) : 0;
+        }
+        for (int i = 0; i < 2 * Bonus.COUNT; i++) {
+            fields[f++] = state.inventory[i];
+        }
+        fields[f++] = state.colonizationPoints[GameState.ME];
+        fields[f++] = state.colonizationPoints[GameState.OPP];
+    }
+
+    /**
+     * Writes the flattened turn back into state, the same way Player.readTurn
+     * would.
+     */
+    static void decode(int[] fields, GameState state) {
+        int f = 0;
+        state.sectorIndex = fields[f++];
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            state.available[station] = fields[f++] == 1;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                state.tech[station * GameState.TECHS + i] = fields[f++];
+            }
+        }
+        state.planetCount = fields[f++];
+        for (int planet = 0; planet < GameState.MAX_PLANETS; planet++) {
+            state.planetId[planet] = fields[f++];
+            for (int i = 0; i < GameState.TECHS; i++) {
+                state.tasks[planet * GameState.TECHS + i] = fields[f++];
+            }
+            state.contribution[GameState.ME * GameState.MAX_PLANETS + planet] = fields[f++];
+            state.contribution[GameState.OPP * GameState.MAX_PLANETS + planet] = fields[f++];
+            state.colonizationScore[planet] = fields[f++];
+            state.planetBonus[planet * 2] = fields[f++];
+            state.planetBonus[planet * 2 + 1] = fields[f++];
+        }
+        for (int i = 0; i < 2 * Bonus.COUNT; i++) {
+            state.inventory[i] = fields[f++];
+        }
+        state.colonizationPoints[GameState.ME] = fields[f++];
+        state.colonizationPoints[GameState.OPP] = fields[f++];
+
+        state.resetHidden();
+        state.refresh();
+    }
+
+    static class Writer implements Closeable {
+        private final OutputStream out;
+        private final int[] previous = new int[TURN_FIELDS];
+        private final int[] current = new int[TURN_FIELDS];
+        private final byte[] bitmap = new byte[BITMAP_BYTES];
+        private boolean inGame;
+        long turns;
+        long bytes;
+
+        Writer(Path file) throws IOException {
+            out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+            writeInt(MAGIC);
+            writeInt(VERSION);
+        }
+
+        /**
+         * Starts a game with the objectives held in state.
+         */
+        void startGame(GameState state) throws IOException {
+            endGame();
+            write(GAME);
+            for (int station = 0; station < GameState.STATIONS; station++) {
+                writeVarint(state.stationId[station]);
+                writeVarint(state.stationOwner[station]);
+                writeVarint(state.objectiveScore[station]);
+                for (int i = 0; i < GameState.TECHS; i++) {
+                    writeVarint(state.objective(station, i));
+                }
+            }
+            Arrays.fill(previous, 0);
+            inGame = true;
+        }
+
+        void writeTurn(GameState state, String command) throws IOException {
+            encode(state, current);
+            Arrays.fill(bitmap, (byte) 0);
+            for (int f = 0; f < TURN_FIELDS; f++) {
+                if (current[f] != previous[f]) {
+                    bitmap[f >> 3] |= (byte) (1 << (f & 7));
+                }
+            }
+            write(TURN);
+            for (byte b : bitmap) {
+                write(b);
+            }
+            for (int f = 0; f < TURN_FIELDS; f++) {
+                if (current[f] != previous[f]) {
+                    int delta = current[f] - previous[f];
+                    writeVarint((delta << 1) ^ (delta >> 31));
+                }
+            }
+            byte[] ascii = command == null ? new byte[0] : command.getBytes(StandardCharsets.US_ASCII);
+            writeVarint(ascii.length);
+            out.write(ascii);
+            bytes += ascii.length;
+            System.arraycopy(current, 0, previous, 0, TURN_FIELDS);
+            turns++;
+        }
+
+        void endGame() throws IOException {
+            if (inGame) {
+                write(END);
+                inGame = false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            endGame();
+            out.close();
+        }
+
+        private void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        private void writeInt(int value) throws IOException {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+    }
+
+    /**
+     * Streams games and turns out of a memory-mapped replay file. Decoding doesn't
+     * allocate, the command of the current turn is kept as bytes.
+     */
+    static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int[] fields = new int[TURN_FIELDS];
+        private final byte[] bitmap = new byte[BITMAP_BYTES];
+        final byte[] command = new byte[256];
+        int commandLength;
+
+        Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a replay file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has replay version " + version + ", expected " + VERSION);
+            }
+        }
+
+        /**
+         * Goes back to the first game of the file.
+         */
+        void rewind() {
+            buffer.position(8);
+        }
+
+        /**
+         * Moves to the next game and reads its objectives into state. Any turns left
+         * in the current game are skipped.
+         *
+         * @return false at the end of the file
+         */
+        boolean nextGame(GameState state) {
+            while (nextTurn(null)) {
+                // skip to the end of the current game
+            }
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+            byte marker = buffer.get();
+            if (marker != GAME) {
+                throw new IllegalStateException("Corrupt replay, expected a game at " + (buffer.position() - 1));
+            }
+            for (int station = 0; station < GameState.STATIONS; station++) {
+                state.stationId[station] = readVarint();
+                state.stationOwner[station] = readVarint();
+                state.objectiveScore[station] = readVarint();
+                for (int i = 0; i < GameState.TECHS; i++) {
+                    state.objective[station * GameState.TECHS + i] = readVarint();
+                }
+            }
+            Arrays.fill(fields, 0);
+            return true;
+        }
+
+        /**
+         * Reads the next turn of the current game into state, null just skips it.
+         *
+         * @return false at the end of the game
+         */
+        boolean nextTurn(GameState state) {
+            if (!buffer.hasRemaining() || buffer.get(buffer.position()) != TURN) {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == END) {
+                    buffer.get();
+                }
+                return false;
+            }
+            buffer.get();
+            buffer.get(bitmap);
+            for (int f = 0; f < TURN_FIELDS; f++) {
+                if ((bitmap[f >> 3] & (1 << (f & 7))) != 0) {
+                    int zigzag = readVarint();
+                    fields[f] += (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            commandLength = readVarint();
+            buffer.get(command, 0, Math.min(commandLength, command.length));
+            if (commandLength > command.length) {
+                buffer.position(buffer.position() + commandLength - command.length);
+                commandLength = command.length;
+            }
+            if (state != null) {
+                decode(fields, state);
+            }
+            return true;
+        }
+
+        String command() {
+            return new String(command, 0, commandLength, StandardCharsets.US_ASCII);
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
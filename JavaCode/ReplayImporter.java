@@ -0,0 +1,185 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Converts recorded games into the binary Replay format. Understands three kinds
+ * of input:
+ * * platform logs like ./data.txt, where our stderr echoes the input and the
+ * following "Standard Output Stream:" line is our command
+ * * plain protocol input like ./data/four-rounds.txt (commands unknown)
+ * * the rawData array of ./sascha/StreamData.java (commands unknown)
+ *
+ * Usage: java ReplayImporter out.replay input...
+ * or: java ReplayImporter --scan file.replay, which streams every turn through
+ * the memory-mapped reader and reports the throughput.
+ */
+public class ReplayImporter {
+    static final String STDERR = "Standard Error Stream:";
+    static final String STDOUT = "Standard Output Stream:";
+
+    public static void main(String[] args) {
+        try {
+            if (args.length == 2 && args[0].equals("--scan")) {
+                scan(Paths.get(args[1]));
+                return;
+            }
+            if (args.length < 2) {
+                System.out.println("Usage: java ReplayImporter out.replay input... | --scan file.replay");
+                return;
+            }
+            long textBytes = 0;
+            Replay.Writer writer = new Replay.Writer(Paths.get(args[0]));
+            try (writer) {
+                for (int i = 1; i < args.length; i++) {
+                    Path input = Paths.get(args[i]);
+                    textBytes += Files.size(input);
+                    long turnsBefore = writer.turns;
+                    importFile(input, writer);
+                    System.out.println(input + ": " + (writer.turns - turnsBefore) + " turns");
+                }
+            }
+            // After close, which writes the last END
+            System.out.println(writer.turns + " turns, " + writer.bytes + " bytes ("
+                    + (writer.turns == 0 ? 0 : writer.bytes / writer.turns) + " per turn) from " + textBytes
+                    + " bytes of text");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    static void importFile(Path input, Replay.Writer writer) throws Exception {
+        List<String> lines = Files.readAllLines(input);
+        if (input.toString().endsWith(".java")) {
+            importInput(streamData(lines), writer);
+        } else if (lines.contains(STDERR)) {
+            importLog(lines, writer);
+        } else {
+            importInput(lines, writer);
+        }
+    }
+
+    /**
+     * Plain protocol input, objectives followed by turns. A turn cut off at the end
+     * is dropped, a malformed one fails the import with its number.
+     */
+    static void importInput(List<String> lines, Replay.Writer writer) throws Exception {
+        Game game = new Game();
+        ProtocolReader in = new ProtocolReader(new ByteArrayInputStream(join(lines)));
+        Player.readObjectives(in, game);
+        writer.startGame(game.state);
+        int turn = 1;
+        try {
+            while (true) {
+                Player.readTurn(in, game);
+                writer.writeTurn(game.state, "");
+                turn++;
+            }
+        } catch (InputMismatchException e) {
+            // a subclass of NoSuchElementException, but not the end of the recording
+            throw new IOException("Malformed input in turn " + turn + ": " + e.getMessage(), e);
+        } catch (NoSuchElementException e) {
+            // end of the recording
+        }
+        writer.endGame();
+    }
+
+    /**
+     * Platform log. Every "Standard Error Stream:" block is one turn of our input,
+     * the first block of a game also holds the objectives. Only lines that look like
+     * protocol are used, so debug output in between doesn't hurt. The command is
+     * the first line of the output block right after it; output blocks without an
+     * error block in front are the opponent's.
+     */
+    static void importLog(List<String> lines, Replay.Writer writer) throws Exception {
+        Game game = null;
+        int i = 0;
+        while (i < lines.size()) {
+            if (!lines.get(i).equals(STDERR)) {
+                i++;
+                continue;
+            }
+            List<String> block = new ArrayList<>();
+            i++;
+            while (i < lines.size() && !lines.get(i).startsWith(STDOUT)) {
+                String line = lines.get(i).trim();
+                if (line.matches("[-0-9A-Z_ ]+")) {
+                    block.add(line);
+                }
+                i++;
+            }
+            String command = i + 1 < lines.size() ? lines.get(i + 1).trim() : "";
+            if (block.isEmpty()) {
+                continue;
+            }
+            try {
+                ProtocolReader in = new ProtocolReader(new ByteArrayInputStream(join(block)));
+                if (block.get(0).split(" ").length == 7) {
+                    // objective line, a new game starts
+                    game = new Game();
+                    Player.readObjectives(in, game);
+                    writer.startGame(game.state);
+                }
+                if (game == null) {
+                    System.err.println("Skipping turn before the first objectives, line " + i);
+                    continue;
+                }
+                Player.readTurn(in, game);
+                writer.writeTurn(game.state, command);
+            } catch (RuntimeException e) {
+                System.err.println("Skipping broken turn before line " + i + ": " + e);
+            }
+        }
+        writer.endGame();
+    }
+
+    /**
+     * The input lines hard coded in StreamData.rawData.
+     */
+    static List<String> streamData(List<String> source) {
+        List<String> lines = new ArrayList<>();
+        boolean inData = false;
+        for (String line : source) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("static String rawData")) {
+                inData = true;
+            } else if (inData && trimmed.startsWith("};")) {
+                break;
+            } else if (inData && trimmed.startsWith("\"")) {
+                lines.add(trimmed.substring(1, trimmed.lastIndexOf('"')));
+            }
+        }
+        return lines;
+    }
+
+    static byte[] join(List<String> lines) {
+        return (String.join("\n", lines) + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static void scan(Path file) throws Exception {
+        GameState state = new GameState();
+        long start = System.nanoTime();
+        long games = 0;
+        long turns = 0;
+        long checksum = 0;
+        try (Replay.Reader reader = new Replay.Reader(file)) {
+            while (reader.nextGame(state)) {
+                games++;
+                while (reader.nextTurn(state)) {
+                    turns++;
+                    checksum += state.planetCount + reader.commandLength;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %d turns in %.3fs (%.0f turns/s, checksum %d)%n", games, turns, seconds,
+                turns / seconds, checksum);
+    }
+}
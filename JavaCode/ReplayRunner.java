@@ -0,0 +1,241 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Regression runner for recorded inputs. Every input file (objectives followed by
+ * turns, like ./data/four-rounds.txt) is played by a fresh Game, files in
+ * parallel on a fixed pool. A .replay file (see ReplayImporter) is streamed
+ * from the memory-mapped Replay format instead, a fresh Game for each of its
+ * games. The commands are compared line by line with the golden output stored
+ * next to the input as <name>.golden. The report lists every decision that
+ * changed, the exceptions Game.play covered with a fallback command, turns per
+ * second and per-turn latency percentiles. Exits with 1 if anything differs or
+ * threw.
+ *
+ * Usage: java ReplayRunner [--update] [--config "options"] [--threads n] path...
+ * A path is an input or replay file or a directory of them. --update writes the
+ * current commands as the new golden output. Only deterministic modes (greedy, plan)
+ * make sense here, the search depends on the clock.
+ */
+public class ReplayRunner {
+    static final String GOLDEN = ".golden";
+
+    boolean update;
+    String[] config = { "mode=greedy" };
+
+    public static void main(String[] args) {
+        try {
+            ReplayRunner runner = new ReplayRunner();
+            int threads = Runtime.getRuntime().availableProcessors();
+            List<Path> inputs = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--update":
+                        runner.update = true;
+                        break;
+                    case "--config":
+                        runner.config = args[++i].trim().split("\\s+");
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        inputs.addAll(inputs(Paths.get(args[i])));
+                }
+            }
+            if (inputs.isEmpty()) {
+                System.out.println("Usage: java ReplayRunner [--update] [--config \"options\"] [--threads n] path...");
+                return;
+            }
+            long start = System.nanoTime();
+            List<Result> results = runner.run(inputs, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            boolean clean = report(results, seconds, System.out);
+            if (!clean && !runner.update) {
+                System.exit(1);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    static List<Path> inputs(Path path) throws Exception {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> file.toString().endsWith(".txt") || file.toString().endsWith(Replay.SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * What one input file did.
+     */
+    static class Result {
+        final Path input;
+        List<String> commands = List.of();
+        long[] turnNanos = new long[0];
+        // Exceptions Game.play covered with a fallback command
+        int failures;
+        // Lines that differ from the golden output, "turn n: expected | got"
+        final List<String> diffs = new ArrayList<>();
+        boolean hasGolden;
+        Exception failure;
+
+        Result(Path input) {
+            this.input = input;
+        }
+    }
+
+    List<Result> run(List<Path> inputs, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path input : inputs) {
+                futures.add(pool.submit(() -> play(input)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    Result play(Path input) {
+        Result result = new Result(input);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            if (input.toString().endsWith(Replay.SUFFIX)) {
+                try (Replay.Reader reader = new Replay.Reader(input)) {
+                    Game game = newGame(output);
+                    while (reader.nextGame(game.state)) {
+                        while (reader.nextTurn(game.state)) {
+                            game.play();
+                        }
+                        game.stopPondering();
+                        addTurns(result, game);
+                        game = newGame(output);
+                    }
+                }
+            } else {
+                Game game = newGame(output);
+                Player.run(new ProtocolReader(new ByteArrayInputStream(Files.readAllBytes(input))), game);
+                addTurns(result, game);
+            }
+
+            String printed = output.toString(StandardCharsets.US_ASCII);
+            result.commands = printed.isEmpty() ? List.of() : Arrays.asList(printed.split("\n"));
+            compare(result);
+        } catch (Exception e) {
+            result.failure = e;
+        }
+        return result;
+    }
+
+    private Game newGame(ByteArrayOutputStream output) {
+        BotConfig botConfig = BotConfig.parse(config);
+        botConfig.stats = true;
+        Game game = new Game(botConfig);
+        game.out = new PrintStream(output);
+        game.err = new PrintStream(OutputStream.nullOutputStream());
+        return game;
+    }
+
+    private static void addTurns(Result result, Game game) {
+        game.out.flush();
+        result.failures += game.failures;
+        int before = result.turnNanos.length;
+        result.turnNanos = Arrays.copyOf(result.turnNanos, before + game.stats.turns());
+        for (int turn = 0; turn < game.stats.turns(); turn++) {
+            result.turnNanos[before + turn] = game.stats.turnNanos(turn);
+        }
+    }
+
+    private void compare(Result result) throws Exception {
+        Path golden = Paths.get(result.input + GOLDEN);
+        if (update) {
+            Files.write(golden, result.commands);
+        }
+        result.hasGolden = Files.exists(golden);
+        if (!result.hasGolden) {
+            return;
+        }
+        List<String> expected = Files.readAllLines(golden);
+        for (int i = 0; i < Math.max(expected.size(), result.commands.size()); i++) {
+            String want = i < expected.size() ? expected.get(i) : "<nothing>";
+            String got = i < result.commands.size() ? result.commands.get(i) : "<nothing>";
+            if (!want.equals(got)) {
+                result.diffs.add("line " + (i + 1) + ": " + want + " | " + got);
+            }
+        }
+    }
+
+    /**
+     * Prints the diffs and totals.
+     *
+     * @return true if every file ran without exceptions and matched its golden output
+     */
+    static boolean report(List<Result> results, double seconds, PrintStream out) {
+        boolean clean = true;
+        int turns = 0;
+        int missing = 0;
+        int changed = 0;
+        int failures = 0;
+        List<Long> latencies = new ArrayList<>();
+        for (Result result : results) {
+            turns += result.turnNanos.length;
+            for (long nanos : result.turnNanos) {
+                latencies.add(nanos);
+            }
+            if (result.failures > 0) {
+                clean = false;
+                failures += result.failures;
+                out.println(result.input + ": " + result.failures + " exceptions caught by Game.play");
+            }
+            if (result.failure != null) {
+                clean = false;
+                out.println(result.input + ": failed, " + result.failure);
+            } else if (!result.hasGolden) {
+                missing++;
+                out.println(result.input + ": no golden output, run with --update");
+            } else if (!result.diffs.isEmpty()) {
+                clean = false;
+                changed++;
+                out.println(result.input + ": " + result.diffs.size() + " changed decisions (golden | now)");
+                for (String diff : result.diffs) {
+                    out.println("  " + diff);
+                }
+            }
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        out.printf("%d files, %d turns, %d changed, %d without golden output, %d exceptions%n", results.size(), turns,
+                changed, missing, failures);
+        if (sorted.length > 0) {
+            out.printf("%.0f turns/s, latency p50 %dus p99 %dus max %dus%n", turns / seconds,
+                    TurnStats.percentile(sorted, 50) / 1000, TurnStats.percentile(sorted, 99) / 1000,
+                    sorted[sorted.length - 1] / 1000);
+        }
+        return clean;
+    }
+}
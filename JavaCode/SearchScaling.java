@@ -0,0 +1,73 @@
+import java.io.ByteArrayInputStream;
+
+/**
+ * How ParallelSearch scales with threads. Searches the same generated positions
+ * for a fixed time with 1 to maxThreads threads and prints playouts per second,
+ * the speedup over one thread and the efficiency (speedup per thread). Each
+ * thread count gets a warm-up on the first position before it's measured.
+ *
+ * Usage: java SearchScaling [maxThreads] [millisPerPosition] [positions] [seed]
+ * maxThreads defaults to the available processors. More threads than cores only
+ * share the cores, the report says how many there are.
+ */
+public class SearchScaling {
+    static final int WARMUP_MILLIS = 1000;
+
+    public static void main(String[] args) {
+        try {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : cores;
+            int millis = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+            int count = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+            GameState[] positions = positions(count, seed);
+            System.out.println(cores + " cores, " + count + " positions, " + millis + "ms each");
+            System.out.printf("%-8s %14s %10s %12s%n", "threads", "playouts/s", "speedup", "efficiency");
+            double single = 0;
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                double rate = measure(threads, positions, millis, seed);
+                if (threads == 1) {
+                    single = rate;
+                }
+                System.out.printf("%-8d %14.0f %9.2fx %11.0f%%%n", threads, rate, rate / single,
+                        100 * rate / single / threads);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Turn inputs from StateGenerator, read the way the bot reads them.
+     */
+    static GameState[] positions(int count, long seed) {
+        Game game = new Game();
+        ProtocolReader in = new ProtocolReader(new ByteArrayInputStream(new StateGenerator(seed).game(count)));
+        Player.readObjectives(in, game);
+        GameState[] positions = new GameState[count];
+        for (int i = 0; i < count; i++) {
+            Player.readTurn(in, game);
+            positions[i] = new GameState();
+            positions[i].copyFrom(game.state);
+        }
+        return positions;
+    }
+
+    /**
+     * @return playouts per second over all positions
+     */
+    static double measure(int threads, GameState[] positions, int millis, long seed) {
+        ParallelSearch search = new ParallelSearch(seed, threads);
+        search.search(positions[0], System.nanoTime() + WARMUP_MILLIS * 1_000_000L);
+        long playouts = 0;
+        long nanos = 0;
+        for (GameState position : positions) {
+            search.search(position, System.nanoTime() + millis * 1_000_000L);
+            playouts += search.playouts;
+            nanos += search.elapsedNanos;
+        }
+        search.close();
+        return playouts * 1e9 / nanos;
+    }
+}
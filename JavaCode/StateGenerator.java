@@ -0,0 +1,230 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generator of protocol input, in the exact format Player reads: 8
+ * objective lines, then per turn the sector, 8 station lines, the planet block,
+ * the bonus block and both scores. Turns are independent random positions for
+ * the same stations, not a played game. Some turns are bent towards edge cases
+ * the recorded games rarely show: fully upgraded stations, planets already lost,
+ * no ready station with an ENERGY_CORE held, a single open planet, empty and
+ * crowded inventories. The same seed always gives the same bytes.
+ *
+ * Usage:
+ * java StateGenerator seed turns > input.txt, one game on stdout
+ * java StateGenerator --dir out games turns seed, one file per game
+ * java StateGenerator --fuzz games turns seed [config], plays every turn in
+ * process and checks that the bot neither fails nor sends an illegal command
+ */
+public class StateGenerator {
+    private final SplittableRandom random;
+    // Stations and objectives of the current game, the turn is drawn into it too
+    private final GameState state = new GameState();
+    private int nextPlanetId;
+
+    StateGenerator(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length >= 5 && args[0].equals("--dir")) {
+                writeFiles(Paths.get(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                        Long.parseLong(args[4]));
+            } else if (args.length >= 4 && args[0].equals("--fuzz")) {
+                String config = args.length > 4 ? args[4] : "mode=greedy";
+                fuzz(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]), config);
+            } else if (args.length == 2) {
+                StateGenerator generator = new StateGenerator(Long.parseLong(args[0]));
+                OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+                out.write(generator.game(Integer.parseInt(args[1])));
+                out.flush();
+            } else {
+                System.err.println("Usage: java StateGenerator seed turns | --dir out games turns seed"
+                        + " | --fuzz games turns seed [config]");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A new set of stations and objectives followed by turns random positions, as
+     * ASCII protocol input.
+     */
+    byte[] game(int turns) {
+        StringBuilder text = new StringBuilder(turns * 600);
+        newGame();
+        state.appendObjectives(text);
+        for (int turn = 0; turn < turns; turn++) {
+            nextTurn();
+            state.appendTurn(text);
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    void newGame() {
+        int firstId = random.nextInt(40);
+        int mine = 0;
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            state.stationId[station] = firstId + station;
+            // 4 stations each, in any order
+            int left = GameState.STATIONS - station;
+            boolean ours = random.nextInt(left) < GameState.STATIONS / 2 - mine;
+            state.stationOwner[station] = ours ? GameState.ME : GameState.OPP;
+            mine += ours ? 1 : 0;
+            int sum = 0;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                int level = random.nextInt(5);
+                state.objective[station * GameState.TECHS + i] = level;
+                sum += level;
+            }
+            state.objectiveScore[station] = Math.max(0, 3 * (sum - 3));
+        }
+        nextPlanetId = random.nextInt(10);
+    }
+
+    /**
+     * Draws the next turn's input into state.
+     */
+    void nextTurn() {
+        boolean upgraded = random.nextInt(10) == 0;
+        boolean stuck = random.nextInt(10) == 0;
+        boolean lostPlanets = random.nextInt(10) == 0;
+        int sector = random.nextInt(GameState.SECTORS);
+        state.sectorIndex = sector;
+
+        for (int station = 0; station < GameState.STATIONS; station++) {
+            boolean mine = state.stationOwner[station] == GameState.ME;
+            state.available[station] = mine && stuck ? false : random.nextInt(4) != 0;
+            for (int i = 0; i < GameState.TECHS; i++) {
+                int level;
+                if (mine && upgraded) {
+                    level = 4;
+                } else {
+                    // Mostly on the way to the objective, sometimes past it
+                    level = Math.min(4, random.nextInt(state.objective(station, i) + 2));
+                }
+                state.tech[station * GameState.TECHS + i] = level;
+            }
+        }
+
+        int planets = random.nextInt(20) == 0 ? 1 : 1 + random.nextInt(GameState.MAX_PLANETS);
+        state.planetCount = planets;
+        for (int planet = 0; planet < planets; planet++) {
+            int total = 5 + 2 * sector - 2 * random.nextInt(2);
+            int majority = (total + 1) / 2;
+            int theirs = lostPlanets && planet % 2 == 0 ? majority + random.nextInt(total - majority)
+                    : random.nextInt(majority);
+            int ours = random.nextInt(Math.min(majority, total - theirs));
+            Arrays.fill(state.tasks, planet * GameState.TECHS, (planet + 1) * GameState.TECHS, 0);
+            for (int i = total - theirs - ours; i > 0; i--) {
+                state.tasks[planet * GameState.TECHS + random.nextInt(GameState.TECHS)]++;
+            }
+            state.planetId[planet] = nextPlanetId++;
+            state.contribution[GameState.ME * GameState.MAX_PLANETS + planet] = ours;
+            state.contribution[GameState.OPP * GameState.MAX_PLANETS + planet] = theirs;
+            state.colonizationScore[planet] = sector + 1;
+            state.planetBonus[planet * 2] = random.nextInt(Bonus.COUNT);
+            state.planetBonus[planet * 2 + 1] = random.nextInt(Bonus.COUNT);
+        }
+
+        int bonuses = random.nextInt(8) == 0 ? 0 : random.nextInt(8) == 0 ? 8 + random.nextInt(8) : random.nextInt(5);
+        Arrays.fill(state.inventory, 0);
+        if (stuck) {
+            state.inventory[GameState.ME * Bonus.COUNT + Bonus.ENERGY_CORE]++;
+        }
+        for (int i = 0; i < bonuses; i++) {
+            int side = random.nextInt(2) == 1 ? GameState.ME : GameState.OPP;
+            state.inventory[side * Bonus.COUNT + random.nextInt(Bonus.COUNT)]++;
+        }
+        state.colonizationPoints[GameState.ME] = random.nextInt(10 + 10 * sector);
+        state.colonizationPoints[GameState.OPP] = random.nextInt(10 + 10 * sector);
+    }
+
+    static void writeFiles(Path directory, int games, int turns, long seed) throws Exception {
+        Files.createDirectories(directory);
+        StateGenerator generator = new StateGenerator(seed);
+        long bytes = 0;
+        for (int game = 0; game < games; game++) {
+            byte[] input = generator.game(turns);
+            Files.write(directory.resolve(String.format("gen-%d-%04d.txt", seed, game)), input);
+            bytes += input.length;
+        }
+        System.out.println(games + " games, " + games * turns + " turns, " + bytes + " bytes in " + directory);
+    }
+
+    /**
+     * Plays every generated turn through ProtocolReader and Game.play, the whole
+     * path the real bot takes, and checks each command against the forward model.
+     * Game.play covers a throwing mode with a fallback command, so a turn counts
+     * as an exception when Game.failures went up, not only when play throws.
+     */
+    static void fuzz(int games, int turns, long seed, String config) {
+        StateGenerator generator = new StateGenerator(seed);
+        Referee checker = new Referee(seed);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        long played = 0;
+        long failures = 0;
+        long illegal = 0;
+        long start = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            BotConfig botConfig = BotConfig.parse(config.trim().split("\\s+"));
+            botConfig.stats = false;
+            botConfig.logLevel = DebugLog.OFF;
+            Game game = new Game(botConfig);
+            game.out = new PrintStream(output);
+            game.err = new PrintStream(errors);
+            ProtocolReader in = new ProtocolReader(new ByteArrayInputStream(generator.game(turns)));
+            Player.readObjectives(in, game);
+            for (int turn = 0; turn < turns; turn++) {
+                Player.readTurn(in, game);
+                output.reset();
+                errors.reset();
+                int failed = game.failures;
+                boolean threw = false;
+                try {
+                    game.play();
+                } catch (RuntimeException e) {
+                    e.printStackTrace(game.err);
+                    threw = true;
+                }
+                if (threw || game.failures != failed) {
+                    if (failures++ < 10) {
+                        game.err.flush();
+                        System.out.println("Game " + g + " turn " + turn + " threw:");
+                        System.out.print(errors.toString(StandardCharsets.US_ASCII));
+                    }
+                    if (threw) {
+                        continue;
+                    }
+                }
+                played++;
+                String printed = output.toString(StandardCharsets.US_ASCII);
+                int end = printed.indexOf('\n');
+                String command = end < 0 ? printed : printed.substring(0, end);
+                checker.state.copyFrom(game.state);
+                int move = checker.parse(command);
+                if (move == Move.NONE || !checker.model.isLegal(checker.state, move)) {
+                    if (illegal++ < 10) {
+                        System.out.println("Game " + g + " turn " + turn + " illegal: " + command);
+                    }
+                }
+            }
+            game.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d turns in %.1fs (%.0f turns/s), %d exceptions, %d illegal commands%n", played, seconds,
+                played / seconds, failures, illegal);
+    }
+}
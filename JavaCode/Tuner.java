@@ -0,0 +1,168 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+
+/**
+ * SPSA tuner for the greedy Weights. Every iteration perturbs all weights at
+ * once in a random +-direction (scaled by Weights.SCALES), plays the plus
+ * against the minus vector in self-play and moves towards the side with the
+ * better average score margin. Games of a batch run in parallel on a fork-join
+ * pool. Every VALIDATE_EVERY iterations the current weights play the defaults on
+ * a fixed set of seeds, the best of those is kept.
+ *
+ * Progress is checkpointed after every iteration, running again with the same
+ * checkpoint file continues where it stopped. Weights are saved exactly and each
+ * iteration draws its perturbation from (seed, iteration) alone, so a resumed
+ * run goes on exactly like one that never stopped. The budget is process CPU time
+ * and counts across restarts.
+ *
+ * Usage: java Tuner [cpuSeconds] [gamesPerIteration] [checkpoint] [threads]
+ * Prints the best set as a weights= option for BotConfig.
+ */
+public class Tuner {
+    static final int VALIDATE_EVERY = 10;
+    static final int VALIDATION_GAMES = 400;
+    static final long VALIDATION_SEED = 1_000_000_000L;
+    // SPSA gain sequences a / (k + 1 + A)^0.602 and c / (k + 1)^0.101
+    static final double A = 10;
+    static final double STEP = 0.5;
+    static final double PERTURBATION = 0.5;
+    // Spreads the iteration numbers over the seed space
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    final ForkJoinPool pool;
+    final int games;
+    final Path checkpoint;
+
+    double[] theta = Weights.DEFAULTS.clone();
+    double[] best = Weights.DEFAULTS.clone();
+    double bestScore = 0.5;
+    int iteration;
+    long cpuNanos;
+    long seed = 1;
+
+    Tuner(int threads, int games, Path checkpoint) {
+        this.pool = new ForkJoinPool(threads);
+        this.games = games;
+        this.checkpoint = checkpoint;
+    }
+
+    public static void main(String[] args) {
+        try {
+            long budgetSeconds = args.length > 0 ? Long.parseLong(args[0]) : 600;
+            int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+            Path checkpoint = Paths.get(args.length > 2 ? args[2] : "tuner.checkpoint");
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+            Tuner tuner = new Tuner(threads, games, checkpoint);
+            if (Files.exists(checkpoint)) {
+                tuner.load();
+                System.out.println("Resuming at iteration " + tuner.iteration + " after " + tuner.cpuNanos / 1_000_000_000L
+                        + " CPU seconds");
+            }
+            tuner.run(budgetSeconds * 1_000_000_000L);
+            System.out.printf("Best: %.1f%% against the defaults%n", 100 * tuner.bestScore);
+            System.out.println("weights=" + Weights.format(tuner.best));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    void run(long budgetNanos) throws Exception {
+        long cpuBefore = processCpuNanos() - cpuNanos;
+        while (cpuNanos < budgetNanos) {
+            int k = iteration;
+            double step = STEP / Math.pow(k + 1 + A, 0.602);
+            double perturbation = PERTURBATION / Math.pow(k + 1, 0.101);
+            SplittableRandom random = new SplittableRandom(seed + k * GOLDEN_GAMMA);
+            double[] delta = new double[Weights.COUNT];
+            double[] plus = new double[Weights.COUNT];
+            double[] minus = new double[Weights.COUNT];
+            for (int i = 0; i < Weights.COUNT; i++) {
+                delta[i] = random.nextBoolean() ? 1 : -1;
+                plus[i] = theta[i] + perturbation * delta[i] * Weights.SCALES[i];
+                minus[i] = theta[i] - perturbation * delta[i] * Weights.SCALES[i];
+            }
+            Arena match = play(plus, minus, games, seed + (long) k * games);
+            double margin = match.marginA.get() / (double) match.games.get();
+            for (int i = 0; i < Weights.COUNT; i++) {
+                theta[i] += step * margin / (2 * perturbation * delta[i]) * Weights.SCALES[i];
+            }
+            iteration++;
+            String line = String.format("iteration %d: margin plus-minus %+.2f", iteration, margin);
+            long failures = match.failedA.get() + match.failedB.get();
+            if (failures > 0) {
+                line += ", " + failures + " exceptions";
+            }
+            if (iteration % VALIDATE_EVERY == 0) {
+                Arena validation = play(theta, Weights.DEFAULTS, VALIDATION_GAMES, VALIDATION_SEED);
+                double score = (validation.winsA.get() + validation.draws.get() / 2.0) / validation.games.get();
+                line += String.format(", %.1f%% against the defaults", 100 * score);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = theta.clone();
+                    line += ", new best";
+                }
+            }
+            cpuNanos = processCpuNanos() - cpuBefore;
+            save();
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Plays count greedy games of a against b, seeds from firstSeed on.
+     */
+    Arena play(double[] a, double[] b, int count, long firstSeed) throws Exception {
+        Arena arena = new Arena("mode=greedy stats=off weights=" + Weights.format(a),
+                "mode=greedy stats=off weights=" + Weights.format(b));
+        pool.submit(() -> LongStream.range(firstSeed, firstSeed + count).parallel().forEach(arena::playGame)).get();
+        return arena;
+    }
+
+    void save() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("iteration", Integer.toString(iteration));
+        properties.setProperty("cpuNanos", Long.toString(cpuNanos));
+        properties.setProperty("seed", Long.toString(seed));
+        properties.setProperty("theta", Weights.format(theta));
+        properties.setProperty("best", Weights.format(best));
+        properties.setProperty("bestScore", Double.toString(bestScore));
+        // Write next to it and move, a crash mid-write never leaves half a checkpoint
+        Path temporary = Paths.get(checkpoint + ".tmp");
+        try (var out = Files.newBufferedWriter(temporary)) {
+            properties.store(out, "Tuner checkpoint");
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void load() throws Exception {
+        Properties properties = new Properties();
+        try (var in = Files.newBufferedReader(checkpoint)) {
+            properties.load(in);
+        }
+        iteration = Integer.parseInt(properties.getProperty("iteration"));
+        cpuNanos = Long.parseLong(properties.getProperty("cpuNanos"));
+        seed = Long.parseLong(properties.getProperty("seed"));
+        theta = Weights.parse(properties.getProperty("theta"));
+        best = Weights.parse(properties.getProperty("best"));
+        bestScore = Double.parseDouble(properties.getProperty("bestScore"));
+    }
+
+    static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    @Override
+    public String toString() {
+        return "iteration " + iteration + " theta " + Arrays.toString(theta);
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-turn latency of a bot with and without the first turn warm-up. The JIT
+ * state is per process, so every game runs in a fresh child JVM: the bot plays
+ * a referee game against the greedy bot and prints its turn times. The report
+ * shows the median over all runs for the first turns and p50/p99 over the rest.
+ *
+ * Usage: java WarmUpReport [runs] [config] [warmupMs]
+ * e.g. java WarmUpReport 10 "mode=plan" 300
+ */
+public class WarmUpReport {
+    static final int SHOWN_TURNS = 10;
+    static final String CHILD = "--child";
+
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0 && args[0].equals(CHILD)) {
+                child(Long.parseLong(args[1]), Arrays.copyOfRange(args, 2, args.length));
+                return;
+            }
+            int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+            String config = args.length > 1 ? args[1] : "mode=plan";
+            int warmupMillis = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+            List<long[]> cold = new ArrayList<>();
+            List<long[]> warm = new ArrayList<>();
+            for (int run = 0; run < runs; run++) {
+                cold.add(runChild(run, config + " warmupMs=0"));
+                warm.add(runChild(run, config + " warmupMs=" + warmupMillis));
+            }
+            System.out.println(config + ", " + runs + " games per column, times in us");
+            System.out.printf("%-10s %12s %12s%n", "turn", "cold", "warm-up " + warmupMillis + "ms");
+            for (int turn = 0; turn < SHOWN_TURNS; turn++) {
+                System.out.printf("%-10d %12d %12d%n", turn + 1, median(cold, turn), median(warm, turn));
+            }
+            long[] coldRest = rest(cold);
+            long[] warmRest = rest(warm);
+            System.out.printf("%-10s %12d %12d%n", "rest p50", TurnStats.percentile(coldRest, 50) / 1000,
+                    TurnStats.percentile(warmRest, 50) / 1000);
+            System.out.printf("%-10s %12d %12d%n", "rest p99", TurnStats.percentile(coldRest, 99) / 1000,
+                    TurnStats.percentile(warmRest, 99) / 1000);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs one game in a new JVM with the same class path and returns the bot's
+     * turn times in ns.
+     */
+    static long[] runChild(long seed, String config) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                "WarmUpReport", CHILD, Long.toString(seed)));
+        command.addAll(Arrays.asList(config.trim().split("\\s+")));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        List<Long> times = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                times.add(Long.parseLong(line.trim()));
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Child for seed " + seed + " failed");
+        }
+        return times.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Child side: plays one game as seat 0 and prints one turn time per line.
+     */
+    static void child(long seed, String[] config) {
+        Referee referee = new Referee(seed);
+        referee.newGame(0);
+        Arena.Bot bot = new Arena.Bot(BotConfig.parse(config), seed);
+        Arena.Bot opponent = new Arena.Bot(new BotConfig(), seed + 1);
+        while (!referee.isOver()) {
+            int player = referee.activePlayer();
+            referee.play((player == 0 ? bot : opponent).play(referee, player));
+        }
+        TurnStats stats = bot.game.stats;
+        for (int turn = 0; turn < stats.turns(); turn++) {
+            System.out.println(stats.turnNanos(turn));
+        }
+    }
+
+    static long median(List<long[]> runs, int turn) {
+        long[] values = runs.stream().filter(r -> r.length > turn).mapToLong(r -> r[turn]).sorted().toArray();
+        return values.length == 0 ? 0 : TurnStats.percentile(values, 50) / 1000;
+    }
+
+    static long[] rest(List<long[]> runs) {
+        return runs.stream().flatMapToLong(r -> Arrays.stream(r).skip(SHOWN_TURNS)).sorted().toArray();
+    }
+}
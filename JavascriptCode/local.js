@@ -0,0 +1,36 @@
+// Runs Main.js outside the platform, e.g. under ProcessArena:
+//   node JavascriptCode/local.js
+// The platform provides a global readline() that returns the next line of
+// stdin, this one reads stdin synchronously the same way and exits when it ends.
+const fs = require('fs');
+
+const chunk = Buffer.alloc(1 << 16);
+let pending = '';
+
+global.readline = function () {
+  let end;
+  while ((end = pending.indexOf('\n')) < 0) {
+    let read;
+    try {
+      read = fs.readSync(0, chunk, 0, chunk.length, null);
+    } catch (e) {
+      if (e.code === 'EAGAIN') {
+        continue;
+      }
+      if (e.code === 'EOF') {
+        read = 0;
+      } else {
+        throw e;
+      }
+    }
+    if (read === 0) {
+      process.exit(0);
+    }
+    pending += chunk.toString('ascii', 0, read);
+  }
+  const line = pending.slice(0, end);
+  pending = pending.slice(end + 1);
+  return line;
+};
+
+require('./Main.js');